@@ -1,6 +1,14 @@
 package amazons;
 
-import java.util.Iterator;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static amazons.Piece.*;
 
@@ -25,6 +33,11 @@ class AI extends Player {
      */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /**
+     * Default size of the transposition table, in megabytes.
+     */
+    static final int DEFAULT_TABLE_MEGABYTES = 16;
+
     /**
      * A new AI with no piece or controller (intended to produce
      * a template).
@@ -33,6 +46,15 @@ class AI extends Player {
         this(null, null);
     }
 
+    /**
+     * A new AI template whose transposition table occupies at most
+     * TABLEMEGABYTES megabytes.
+     */
+    AI(int tableMegabytes) {
+        this(null, null);
+        _tableMegabytes = tableMegabytes;
+    }
+
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
@@ -42,103 +64,420 @@ class AI extends Player {
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI result = new AI(piece, controller);
+        result._tableMegabytes = _tableMegabytes;
+        result.setTimeControl(_moveMillis, _clockMillis, _incrementMillis);
+        result._threads = _threads;
+        result._evaluator = _evaluator;
+        result._book = _book;
+        result._splitMoves = _splitMoves;
+        result._statsLog = _statsLog;
+        result._monitor = _monitor;
+        result._ponder = _ponder;
+        result.setSeed(_seed);
+        return result;
+    }
+
+    /**
+     * Score non-final positions with (new instances of) EVALUATOR.
+     */
+    void setEvaluator(Evaluator evaluator) {
+        _evaluator = evaluator;
+    }
+
+    /**
+     * Play from BOOK (none if null) when it has a legal move for the
+     * position, instead of searching.
+     */
+    void setBook(OpeningBook book) {
+        _book = book;
+    }
+
+    /**
+     * Iff SPLIT, search in split mode: treat a queen move and its spear
+     * throw as two half-plies, generating the spear throws after a queen
+     * move only when the search reaches it and ordering queen moves and
+     * spear throws by their own history scores.  In the last ply, queen
+     * moves are pruned: only the few whose positions evaluate best
+     * (before any spear is thrown) are expanded.  Otherwise, all moves
+     * at a node are generated at once and none are pruned.
+     */
+    void setSplitMoves(boolean split) {
+        _splitMoves = split;
+    }
+
+    /**
+     * Make my random choices among book moves using SEED, which the
+     * players I create inherit.  These choices never draw on my
+     * Controller's randInt, so they leave its sequence unchanged.
+     */
+    void setSeed(long seed) {
+        _seed = seed;
+        _random = new Random(seed);
+    }
+
+    /**
+     * Write a line summarizing each of my searches (see SearchStats) to
+     * LOG, or nothing if LOG is null.
+     */
+    void setStatsLog(PrintStream log) {
+        _statsLog = log;
+    }
+
+    /**
+     * Report the statistics of each of my searches to MONITOR (none if
+     * null).
+     */
+    void setMonitor(SearchMonitor monitor) {
+        _monitor = monitor;
+    }
+
+    /**
+     * Iff PONDER, keep searching during my opponent's turn.  After each
+     * move I find, I guess the reply (the transposition table's best
+     * move in the position after mine) and search the position it would
+     * leave on a background thread, filling my transposition table, until
+     * I am next asked for a move.  If the guess was right, that search
+     * starts from the deep results already in the table; if not, the
+     * background search is abandoned within a few hundred nodes.
+     */
+    void setPonder(boolean ponder) {
+        _ponder = ponder;
+        if (!ponder) {
+            stop();
+        }
+    }
+
+    /**
+     * Search with THREADS threads (at least 1).  Extra threads run
+     * "Lazy SMP" helper searches on their own copies of the board,
+     * sharing only the transposition table, so that the main search
+     * finds more of its positions already scored.  With one thread the
+     * search is deterministic.
+     */
+    void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (threads != _threads) {
+            releaseHelpers();
+        }
+        _threads = threads;
+    }
+
+    /**
+     * Limit my thinking to MOVEMILLIS milliseconds per move (no limit if
+     * 0) and, if CLOCKMILLIS is positive, to a game clock that starts at
+     * CLOCKMILLIS milliseconds and gains INCREMENTMILLIS after each of my
+     * moves.  With neither limit, I search to the fixed depth given by
+     * maxDepth.  A limit is exceeded by at most the time taken to search
+     * one move at the root or CLOCK_CHECK_INTERVAL nodes, whichever is
+     * less: even the first iteration is abandoned when time runs out,
+     * and then I play the first legal move.
+     */
+    void setTimeControl(long moveMillis, long clockMillis,
+                        long incrementMillis) {
+        _moveMillis = moveMillis;
+        _clockMillis = clockMillis;
+        _incrementMillis = incrementMillis;
+        _remainingMillis = clockMillis;
+    }
+
+    @Override
+    void stop() {
+        stopPondering(null);
+        if (_ponderPool != null) {
+            _ponderPool.shutdown();
+            _ponderPool = null;
+        }
+        releaseHelpers();
     }
 
     @Override
     String myMove() {
-        Move move = findMove();
+        Move move = findMove(board());
         _controller.reportMove(move);
         return move.toString();
     }
 
     /**
-     * Return a move for me from the current position, assuming there
-     * is a move.
+     * Return a move for the side to move in BOARD, which must have one,
+     * charging the time taken to my game clock (if any).  BOARD is not
+     * modified.  Plays a move from my opening book if it has one;
+     * otherwise searches to successively greater depths, keeping the
+     * move from the last iteration that finished before the deadline.
      */
-    private Move findMove() {
-        Board b = new Board(board());
-        if (_myPiece == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
+    Move findMove(Board board) {
+        long start = System.currentTimeMillis();
+        stopPondering(board);
+        Board b = new Board(board);
+        long budget = timeBudget(b);
+        Move move = bookMove(b);
+        if (move != null) {
+            report(b.turn(), move,
+                   SearchStats.none(System.currentTimeMillis() - start));
+        } else if (budget > 0) {
+            move = search(b, MAX_DEPTH, start + budget);
         } else {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
+            move = search(b, maxDepth(b), Long.MAX_VALUE);
+        }
+        if (_clockMillis > 0) {
+            _remainingMillis += _incrementMillis
+                - (System.currentTimeMillis() - start);
         }
-        return _lastFoundMove;
+        ponder(b, move);
+        return move;
     }
 
     /**
-     * The move found by the last call to one of the ...FindMove methods
-     * below.
+     * Return a move for the side to move in BOARD, which must have one,
+     * found by searching DEPTH plies regardless of my time control.
+     * BOARD is not modified.  This is the entry point for callers that
+     * drive the AI directly rather than through a Controller.
      */
-    private Move _lastFoundMove;
+    Move findMove(Board board, int depth) {
+        stopPondering(board);
+        Board b = new Board(board);
+        Move move = search(b, depth, Long.MAX_VALUE);
+        ponder(b, move);
+        return move;
+    }
 
     /**
-     * Find a move from position BOARD and return its value, recording
-     * the move found in _lastFoundMove iff SAVEMOVE. The move
-     * should have maximal value or have value > BETA if SENSE==1,
-     * and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     * DEPTH levels.  Searching at level 0 simply returns a static estimate
-     * of the board value and does not set _lastMoveFound.
+     * Return the reply I am pondering, or null if I am not pondering.
      */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        Iterator<Move> iterf = board.legalMoves();
+    Move ponderMove() {
+        return _pondering == null ? null : _ponderMove;
+    }
 
-        Move curr = null;
-        int optimalv;
-        if (sense == 1) {
-            optimalv = -INFTY;
-        } else {
-            optimalv = INFTY;
+    /**
+     * Return the number of moves I have been asked for in positions I
+     * was pondering.
+     */
+    int ponderHits() {
+        return _ponderHits;
+    }
+
+    /**
+     * If I ponder, start searching in the background the position that
+     * MOVE and then my guess at the reply would leave in BOARD, unless
+     * I have no guess or the game would be over.  BOARD is not
+     * modified.
+     */
+    private void ponder(Board board, Move move) {
+        if (!_ponder || move == null || _table == null) {
+            return;
+        }
+        Board next = new Board(board);
+        next.makeMove(move.code());
+        if (next.winner() != null) {
+            return;
+        }
+        int reply = TranspositionTable.move(_table.probe(next.hash()));
+        if (reply == 0 || !next.isLegal(reply)) {
+            return;
         }
+        next.makeMove(reply);
+        if (next.winner() != null) {
+            return;
+        }
+        _ponderMove = Move.mv(reply);
+        _ponderKey = next.hash();
+        _table.newSearch();
+        _stop = false;
+        _deadline = Long.MAX_VALUE;
+        _ponderer = new Searcher(next, 1, MAX_DEPTH, true);
+        _pondering = ponderPool().submit(_ponderer);
+    }
 
-        if (sense == -1) {
-            if (depth == 0 || board.winner() != null) {
-                return staticScore(board);
-            }
-            while (iterf.hasNext()) {
-                Move nexxt = iterf.next();
-                board.makeMove(nexxt);
-                int rxn = findMove(board, depth - 1, saveMove,
-                        -sense, alpha, beta);
+    /**
+     * Stop my background search, if any, and wait for it to finish,
+     * counting a ponder hit if it was searching BOARD (which may be
+     * null).
+     */
+    private void stopPondering(Board board) {
+        if (_pondering == null) {
+            return;
+        }
+        _stop = true;
+        try {
+            _pondering.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        }
+        _pondering = null;
+        boolean hit = board != null && board.hash() == _ponderKey;
+        if (hit) {
+            _ponderHits += 1;
+        }
+        if (_statsLog != null) {
+            _statsLog.printf("%s ponder=%s reply=%s nodes=%d%n",
+                             _ponderer._board.turn(), hit ? "hit" : "miss",
+                             _ponderMove, _ponderer._nodes);
+        }
+        _ponderer = null;
+    }
 
-                board.undo();
-                if (rxn <= optimalv) {
-                    curr = nexxt;
-                    optimalv = rxn;
-                    beta = Math.min(beta, rxn);
-                    if (beta <= alpha) {
-                        break;
-                    }
-                }
-            }
-        } else if (sense == 1) {
-            if (depth == 0 || board.winner() != null) {
-                return staticScore(board);
-            }
-            while (iterf.hasNext()) {
-                Move nexxt = iterf.next();
-                board.makeMove(nexxt);
-                int reacc = findMove(board, depth - 1, false,
-                        -sense, alpha, beta);
-                board.undo();
-                if (reacc >= optimalv) {
-                    curr = nexxt;
-                    optimalv = reacc;
-                    alpha = Math.max(alpha, reacc);
+    /**
+     * Return the single-thread pool that runs my background searches,
+     * creating it on first use.  Its thread is a daemon, and lasts until
+     * stop.
+     */
+    private ExecutorService ponderPool() {
+        if (_ponderPool == null) {
+            _ponderPool = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "amazons-ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _ponderPool;
+    }
 
-                    if (beta <= alpha) {
-                        break;
-                    }
-                }
+    /**
+     * Return a legal move from my opening book for BOARD, chosen at
+     * random according to the book's weights, or null if there is
+     * none.
+     */
+    private Move bookMove(Board board) {
+        if (_book == null) {
+            return null;
+        }
+        int move = _book.move(board.hash(), _random);
+        if (move == 0 || !board.isLegal(move)) {
+            return null;
+        }
+        return Move.mv(move);
+    }
+
+    /**
+     * Return the statistics of my most recent search, counting all
+     * threads.
+     */
+    SearchStats stats() {
+        return _stats;
+    }
+
+    /**
+     * Return the number of nodes visited by my most recent search,
+     * counting all threads.
+     */
+    long nodes() {
+        return _stats.nodes();
+    }
+
+    /**
+     * Record STATS as those of my most recent search, which chose MOVE
+     * for SIDE, and pass them on to my log and monitor.
+     */
+    private void report(Piece side, Move move, SearchStats stats) {
+        _stats = stats;
+        if (_statsLog != null) {
+            _statsLog.printf("%s move=%s %s%n", side, move, stats);
+        }
+        if (_monitor != null) {
+            _monitor.record(stats);
+        }
+    }
+
+    /**
+     * Return the move chosen by iteratively deepening from BOARD, which
+     * I may modify, to at most LIMIT plies or until time DEADLINE (as
+     * from System.currentTimeMillis).
+     */
+    private Move search(Board board, int limit, long deadline) {
+        long start = System.currentTimeMillis();
+        if (_table == null) {
+            _table = new TranspositionTable(_tableMegabytes);
+        }
+        _table.newSearch();
+        _deadline = deadline;
+
+        _stop = false;
+        List<Searcher> searchers = new ArrayList<>();
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            Searcher helper =
+                new Searcher(new Board(board), 1 + i % 2, limit, true);
+            searchers.add(helper);
+            helpers.add(helperPool().submit(helper));
+        }
+        Searcher main = new Searcher(board, 1, limit, false);
+        searchers.add(main);
+        Move best = main.iterate();
+        _stop = true;
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
             }
         }
-        if (saveMove) {
-            _lastFoundMove = curr;
+        long nodes, interior, children, evaluations, cutoffs, firstCutoffs,
+            probes, hits;
+        nodes = interior = children = evaluations = cutoffs = firstCutoffs
+            = probes = hits = 0;
+        for (Searcher searcher : searchers) {
+            nodes += searcher._nodes;
+            interior += searcher._interior;
+            children += searcher._children;
+            evaluations += searcher._evaluations;
+            cutoffs += searcher._cutoffs;
+            firstCutoffs += searcher._firstMoveCutoffs;
+            probes += searcher._tableProbes;
+            hits += searcher._tableHits;
         }
-        return optimalv;
+        report(board.turn(), best,
+               new SearchStats(nodes, interior, children, evaluations,
+                               cutoffs, firstCutoffs, probes, hits,
+                               System.currentTimeMillis() - start,
+                               main.iterationMillis()));
+        return best;
     }
 
+    /**
+     * Return the pool that runs my helper searches, creating it on
+     * first use with a thread for each helper.  Its threads are
+     * daemons, so they never keep the program alive, and they last
+     * until stop or a change in my number of threads.
+     */
+    private ExecutorService helperPool() {
+        if (_helperPool == null) {
+            _helperPool = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread thread = new Thread(r, "amazons-search-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _helperPool;
+    }
+
+    /**
+     * Shut down my helper pool, if any, so that its threads end; the
+     * next search with helpers creates a new one.
+     */
+    private void releaseHelpers() {
+        if (_helperPool != null) {
+            _helperPool.shutdown();
+            _helperPool = null;
+        }
+    }
+
+    /**
+     * Return the number of milliseconds to spend on a move in BOARD, or
+     * 0 if my time is unlimited.  When I have a game clock, I plan to
+     * spread what is left over the moves I am likely still to make.
+     */
+    private long timeBudget(Board board) {
+        long budget = _moveMillis;
+        if (_clockMillis > 0) {
+            int movesLeft = Math.max(MIN_MOVES_TO_GO,
+                                     (MAX_PLIES - board.numMoves()) / 2);
+            long share = _remainingMillis / movesLeft + _incrementMillis;
+            share = Math.min(share, _remainingMillis / 2);
+            share = Math.max(share, 1);
+            budget = budget > 0 ? Math.min(budget, share) : share;
+        }
+        return budget;
+    }
 
     /**
      * Return a heuristically determined maximum search depth
@@ -161,25 +500,882 @@ class AI extends Player {
 
 
     /**
-     * Return a heuristic value for BOARD.
+     * One thread's search: an iterative-deepening alpha-beta search of
+     * its own Board, sharing my transposition table and deadline.
      */
+    private class Searcher implements Runnable {
 
-    private int staticScore(Board board) {
-        Piece winner = board.winner();
-        if (winner == WHITE) {
-            return WINNING_VALUE;
-        } else if (winner == BLACK) {
-            return -WINNING_VALUE;
-        } else {
-            int white = 0;
-            Iterator<Move> current = board.legalMoves();
-            while (current.hasNext()) {
-                current.next();
-                white += 1;
+        /**
+         * A search of BOARD from depth FIRSTDEPTH to LIMIT.  A HELPER
+         * search only serves to fill the transposition table and stops
+         * as soon as the main search does.
+         */
+        Searcher(Board board, int firstDepth, int limit, boolean helper) {
+            _board = board;
+            _firstDepth = firstDepth;
+            _limit = limit;
+            _helper = helper;
+            _eval = _evaluator.newInstance();
+        }
+
+        @Override
+        public void run() {
+            iterate();
+        }
+
+        /**
+         * Search to successively greater depths and return the move
+         * chosen by the last iteration that completed.  If none did, a
+         * helper returns null, and the main search returns the first
+         * legal move (null if there is none).
+         */
+        Move iterate() {
+            int sense = _board.turn() == WHITE ? 1 : -1;
+            int best = 0;
+            for (int depth = _firstDepth; depth <= _limit; depth += 1) {
+                long start = System.currentTimeMillis();
+                _aborted = false;
+                int value = findMove(_board, depth, true, sense,
+                                     -INFTY, INFTY);
+                if (_aborted) {
+                    break;
+                }
+                best = _lastFoundMove;
+                _iterationMillis[_iterations] =
+                    System.currentTimeMillis() - start;
+                _iterations += 1;
+                if (Math.abs(value) == WINNING_VALUE
+                    || System.currentTimeMillis() >= _deadline
+                    || (_helper && _stop)) {
+                    break;
+                }
             }
+            if (best == 0 && !_helper) {
+                int[] moves = moveBuffer(0);
+                if (_board.legalMoves(moves) > 0) {
+                    best = moves[0];
+                }
+            }
+            return best == 0 ? null : Move.mv(best);
+        }
 
-            return white;
+        /**
+         * Return the times taken by my completed iterations, in order.
+         */
+        long[] iterationMillis() {
+            return Arrays.copyOf(_iterationMillis, _iterations);
+        }
+
+        /**
+         * Record that the search has reached another node, and abandon it if
+         * the deadline has passed or (for helpers) the main search has
+         * finished.  The clock is read at every child of the root and
+         * otherwise once per CLOCK_CHECK_INTERVAL + 1 nodes.  Return true
+         * iff the search is to be abandoned.
+         */
+        private boolean timeUp() {
+            _nodes += 1;
+            if (((_nodes & CLOCK_CHECK_INTERVAL) == 0 || _ply == 1)
+                && (_stop || System.currentTimeMillis() >= _deadline)) {
+                _aborted = true;
+            }
+            return _aborted;
+        }
+
+        /**
+         * Find a move from position BOARD and return its value, recording
+         * the code of the move found in _lastFoundMove iff SAVEMOVE. The move
+         * should have maximal value or have value > BETA if SENSE==1,
+         * and minimal value or value < ALPHA if SENSE==-1. Searches up to
+         * DEPTH levels.  Searching at level 0 simply returns a static estimate
+         * of the board value and does not set _lastMoveFound.  Positions
+         * already searched deeply enough are answered from the transposition
+         * table (except at the root, which must produce a move).  Moves
+         * are tried in stages: the table's best move for the position,
+         * then the ply's killer moves, and only then (if none of these
+         * caused a cutoff) the others, in order of history score: all at
+         * once, or in split mode, one queen move at a time, so that the
+         * spear throws after a queen move are only generated if the
+         * search reaches it.
+         * If the deadline passes, sets _aborted and returns a meaningless
+         * value.
+         * Late in the game, interior positions not answered by the table
+         * whose regions decide the game are scored as won or lost without
+         * search, and moves within either side's territory are represented
+         * by a single filling move.  Leaves get only the static estimate.
+         * Should pruning ever leave no move at a node that has legal
+         * moves, all of them are searched instead, so that every value
+         * comes from at least one child.
+         */
+        private int findMove(Board board, int depth, boolean saveMove,
+                             int sense, int alpha, int beta) {
+            if (timeUp()) {
+                return 0;
+            }
+            if (depth == 0 || board.winner() != null) {
+                return staticScore(board);
+            }
+
+            long key = board.hash();
+            long entry = _table.probe(key);
+            _tableProbes += 1;
+            if (entry != 0) {
+                _tableHits += 1;
+            }
+            int hashMove = 0;
+            if (entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if (hashMove != 0 && !board.isLegal(hashMove)) {
+                    hashMove = 0;
+                }
+                if (!saveMove && TranspositionTable.depth(entry) >= depth) {
+                    int score = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT) {
+                        return score;
+                    } else if (bound == TranspositionTable.LOWER) {
+                        alpha = Math.max(alpha, score);
+                    } else {
+                        beta = Math.min(beta, score);
+                    }
+                    if (beta <= alpha) {
+                        return score;
+                    }
+                }
+            }
+
+            boolean endgame = board.numMoves() >= ENDGAME_PLIES;
+            if (endgame) {
+                _endgame.analyze(board);
+                Piece winner = _endgame.winner(board.turn());
+                if (winner != null && !saveMove) {
+                    return winner == WHITE ? WINNING_VALUE : -WINNING_VALUE;
+                }
+            }
+
+            int alpha0 = alpha, beta0 = beta;
+            int[] moves = moveBuffer(_ply);
+            int numMoves = presetMoves(board, hashMove, moves);
+            int numPreset = numMoves;
+            int batch = 0;
+            int batchStart = numPreset;
+            int curr = 0;
+            int optimalv;
+            if (sense == 1) {
+                optimalv = -INFTY;
+            } else {
+                optimalv = INFTY;
+            }
+
+            _interior += 1;
+            for (int i = 0;; i += 1) {
+                if (i == numMoves) {
+                    batchStart = i;
+                    numMoves = nextMoves(board, depth, endgame, moves,
+                                         numPreset, numMoves, batch);
+                    batch += 1;
+                    if (numMoves == 0) {
+                        numMoves = generateMoves(board, false, moves, 0);
+                    }
+                    if (i == numMoves) {
+                        break;
+                    }
+                }
+                if (i >= numPreset) {
+                    selectBest(moves, i, batchStart, numMoves);
+                }
+                int nexxt = moves[i];
+                _children += 1;
+                board.makeMove(nexxt);
+                _ply += 1;
+                int rxn = findMove(board, depth - 1, false, -sense,
+                                   alpha, beta);
+                _ply -= 1;
+                board.undo();
+                if (_aborted) {
+                    return 0;
+                }
+                if (sense == 1 && rxn > optimalv) {
+                    curr = nexxt;
+                    optimalv = rxn;
+                    alpha = Math.max(alpha, rxn);
+                } else if (sense == -1 && rxn < optimalv) {
+                    curr = nexxt;
+                    optimalv = rxn;
+                    beta = Math.min(beta, rxn);
+                }
+                if (beta <= alpha) {
+                    recordCutoff(nexxt, i, hashMove, depth);
+                    break;
+                }
+            }
+
+            int bound;
+            if (optimalv <= alpha0) {
+                bound = TranspositionTable.UPPER;
+            } else if (optimalv >= beta0) {
+                bound = TranspositionTable.LOWER;
+            } else {
+                bound = TranspositionTable.EXACT;
+            }
+            _table.store(key, depth, optimalv, bound, curr);
+            if (saveMove) {
+                _lastFoundMove = curr;
+            }
+            return optimalv;
+        }
+
+        /**
+         * Return a heuristic value for BOARD.
+         */
+        private int staticScore(Board board) {
+            Piece winner = board.winner();
+            if (winner == WHITE) {
+                return WINNING_VALUE;
+            } else if (winner == BLACK) {
+                return -WINNING_VALUE;
+            } else {
+                _evaluations += 1;
+                return _eval.score(board);
+            }
+        }
+
+        /**
+         * Return the move-code buffer for search ply PLY, creating it on
+         * first use.
+         */
+        private int[] moveBuffer(int ply) {
+            if (_moveBuffers[ply] == null) {
+                _moveBuffers[ply] = new int[Board.MAX_MOVES];
+            }
+            return _moveBuffers[ply];
         }
+
+        /**
+         * Fill the start of MOVES with the moves to try before generating
+         * any: HASHMOVE (if not 0) and this ply's killer moves that are
+         * legal on BOARD.  Return how many there are.
+         */
+        private int presetMoves(Board board, int hashMove, int[] moves) {
+            int n = 0;
+            if (hashMove != 0) {
+                moves[n++] = hashMove;
+            }
+            for (int killer : _killers[_ply]) {
+                if (killer != 0 && killer != hashMove
+                    && board.isLegal(killer)) {
+                    moves[n++] = killer;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Append to the first N codes in MOVES (of which the first
+         * NUMPRESET were tried before generating any) the next batch of
+         * moves to be searched DEPTH plies deep from BOARD (restricted by
+         * the endgame analysis iff ENDGAME), recording their history
+         * scores, and return the new number of codes, which is N if there
+         * are no more.  BATCH is the number of earlier calls at this
+         * node.  The first batch holds all the moves, except in split
+         * mode, where each batch holds the spear throws that follow a
+         * single queen move.  Queen moves are taken in order of history
+         * score, except in the last ply, where they are ranked by the
+         * static value of the position after the queen move alone and
+         * only the best QUEEN_WIDTH are expanded.
+         */
+        private int nextMoves(Board board, int depth, boolean endgame,
+                              int[] moves, int numPreset, int n,
+                              int batch) {
+            if (!_splitMoves) {
+                if (batch > 0) {
+                    return n;
+                }
+                return generateMoves(board, endgame, moves, numPreset);
+            }
+            int[] queens = queenBuffer(_ply);
+            int filling = endgame ? _endgame.fillingMove(board.turn()) : 0;
+            if (batch == 0) {
+                _numQueens[_ply] = scoreQueenMoves(board, depth, endgame,
+                                                   filling, queens);
+                _queensUsed[_ply] = 0;
+            }
+            int[] spears = generateBuffer(_ply);
+            int[] scores = scoreBuffer(_ply);
+            while (_queensUsed[_ply] < _numQueens[_ply]) {
+                int queen = selectQueen(queens, _queensUsed[_ply],
+                                        _numQueens[_ply]);
+                _queensUsed[_ply] += 1;
+                int from = Move.from(queen), to = Move.to(queen);
+                boolean territory = endgame && _endgame.inTerritory(from);
+                if (territory && (filling == 0 || Move.from(filling) != from
+                                  || Move.to(filling) != to)) {
+                    continue;
+                }
+                int numSpears = board.spearThrows(from, to, spears);
+                int k = n;
+                for (int i = 0; i < numSpears; i += 1) {
+                    int code = spears[i];
+                    if (territory && code != filling
+                        || isPreset(code, moves, numPreset)) {
+                        continue;
+                    }
+                    scores[k] = _spearHistory[to * SQUARES
+                                              + Move.spear(code)];
+                    moves[k] = code;
+                    k += 1;
+                }
+                if (k > n) {
+                    return k;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * Fill QUEENS with the queen moves (see Board.queenMoves) of the
+         * side to move on BOARD that are to be expanded in a search
+         * DEPTH plies deep, recording their scores for selectQueen, and
+         * return how many there are.  Iff ENDGAME, queen moves within
+         * either side's territory are dropped, except the one beginning
+         * FILLING (if not 0).  In the last ply, each remaining queen move
+         * is made alone and statically evaluated (which counts as
+         * visiting a node), and only the best QUEEN_WIDTH are kept.
+         */
+        private int scoreQueenMoves(Board board, int depth, boolean endgame,
+                                    int filling, int[] queens) {
+            Piece side = board.turn();
+            int n = board.queenMoves(side, queens);
+            if (endgame) {
+                int k = 0;
+                for (int j = 0; j < n; j += 1) {
+                    int from = Move.from(queens[j]), to = Move.to(queens[j]);
+                    if (!_endgame.inTerritory(from)
+                        || filling != 0 && Move.from(filling) == from
+                           && Move.to(filling) == to) {
+                        queens[k] = queens[j];
+                        k += 1;
+                    }
+                }
+                n = k;
+            }
+            int[] scores = queenScoreBuffer(_ply);
+            if (depth > 1) {
+                for (int j = 0; j < n; j += 1) {
+                    int q = queens[j];
+                    scores[j] = _history[Move.from(q) * SQUARES
+                                         + Move.to(q)];
+                }
+                return n;
+            }
+            int sense = side == WHITE ? 1 : -1;
+            for (int j = 0; j < n; j += 1) {
+                Square from = Square.sq(Move.from(queens[j])),
+                    to = Square.sq(Move.to(queens[j]));
+                board.put(side, to);
+                board.put(EMPTY, from);
+                scores[j] = sense * _eval.score(board);
+                board.put(side, from);
+                board.put(EMPTY, to);
+                _nodes += 1;
+                _evaluations += 1;
+            }
+            int width = Math.min(n, QUEEN_WIDTH);
+            for (int j = 0; j < width; j += 1) {
+                selectQueen(queens, j, n);
+            }
+            return width;
+        }
+
+        /**
+         * Swap the queen move with the highest score (as recorded by
+         * scoreQueenMoves) among QUEENS[I] through QUEENS[N - 1] into
+         * QUEENS[I], and return it.
+         */
+        private int selectQueen(int[] queens, int i, int n) {
+            int[] scores = queenScoreBuffer(_ply);
+            int best = i;
+            for (int j = i + 1; j < n; j += 1) {
+                if (scores[j] > scores[best]) {
+                    best = j;
+                }
+            }
+            int queen = queens[best], score = scores[best];
+            queens[best] = queens[i];
+            scores[best] = scores[i];
+            queens[i] = queen;
+            scores[i] = score;
+            return queen;
+        }
+
+        /**
+         * Return true iff CODE is among the first N codes in MOVES.
+         */
+        private boolean isPreset(int code, int[] moves, int n) {
+            for (int j = 0; j < n; j += 1) {
+                if (moves[j] == code) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Append to the first NUMPRESET codes in MOVES the codes of the
+         * other moves to be searched from BOARD (restricted by the
+         * endgame analysis iff ENDGAME), recording their history scores,
+         * and return the total number of codes.
+         */
+        private int generateMoves(Board board, boolean endgame,
+                                  int[] moves, int numPreset) {
+            int[] generated = generateBuffer(_ply);
+            int n = board.legalMoves(generated);
+            if (endgame) {
+                n = _endgame.restrict(generated, n, board.turn());
+            }
+            int[] scores = scoreBuffer(_ply);
+            int k = numPreset;
+            for (int i = 0; i < n; i += 1) {
+                int code = generated[i];
+                if (!isPreset(code, moves, numPreset)) {
+                    int to = Move.to(code);
+                    scores[k] = _history[Move.from(code) * SQUARES + to]
+                        + _spearHistory[to * SQUARES + Move.spear(code)];
+                    moves[k] = code;
+                    k += 1;
+                }
+            }
+            return k;
+        }
+
+        /**
+         * Put the move with the highest history score among MOVES[I]
+         * through MOVES[N - 1] (scored by generateMoves) into MOVES[I],
+         * where MOVES[START] is the first move of the current batch.  The
+         * first SELECTED_MOVES picks of a batch each scan the rest of it,
+         * since most cutoffs come early; the pick after those sorts the
+         * remainder once, so that a node searching all its moves costs
+         * O(N log N) rather than O(N^2), and later picks find their move
+         * already in place.
+         */
+        private void selectBest(int[] moves, int i, int start, int n) {
+            if (i - start > SELECTED_MOVES) {
+                return;
+            }
+            int[] scores = scoreBuffer(_ply);
+            if (i - start == SELECTED_MOVES) {
+                sortMoves(moves, scores, i, n);
+                return;
+            }
+            int best = i;
+            for (int j = i + 1; j < n; j += 1) {
+                if (scores[j] > scores[best]) {
+                    best = j;
+                }
+            }
+            if (best != i) {
+                int move = moves[best], score = scores[best];
+                moves[best] = moves[i];
+                scores[best] = scores[i];
+                moves[i] = move;
+                scores[i] = score;
+            }
+        }
+
+        /**
+         * Sort MOVES[I] through MOVES[N - 1] and their SCORES in order of
+         * decreasing score.
+         */
+        private void sortMoves(int[] moves, int[] scores, int i, int n) {
+            for (int k = i; k < n; k += 1) {
+                _sortBuffer[k] = ((long) scores[k] << 32)
+                    | (moves[k] & 0xffffffffL);
+            }
+            Arrays.sort(_sortBuffer, i, n);
+            for (int k = i, j = n - 1; k < n; k += 1, j -= 1) {
+                moves[k] = (int) _sortBuffer[j];
+                scores[k] = (int) (_sortBuffer[j] >> 32);
+            }
+        }
+
+        /**
+         * Record that MOVE, the Ith move tried at the current ply, caused
+         * a cutoff in a search of DEPTH plies whose table move was
+         * HASHMOVE, updating the killer moves, history scores, and
+         * cutoff counts.
+         */
+        private void recordCutoff(int move, int i, int hashMove,
+                                  int depth) {
+            _cutoffs += 1;
+            if (i == 0) {
+                _firstMoveCutoffs += 1;
+            }
+            if (move == hashMove) {
+                return;
+            }
+            int[] killers = _killers[_ply];
+            if (killers[0] != move) {
+                killers[1] = killers[0];
+                killers[0] = move;
+            }
+            int to = Move.to(move);
+            int bonus = depth * depth;
+            _history[Move.from(move) * SQUARES + to] += bonus;
+            _spearHistory[to * SQUARES + Move.spear(move)] += bonus;
+            if (_history[Move.from(move) * SQUARES + to] > MAX_HISTORY
+                || _spearHistory[to * SQUARES + Move.spear(move)]
+                   > MAX_HISTORY) {
+                for (int j = 0; j < _history.length; j += 1) {
+                    _history[j] /= 2;
+                    _spearHistory[j] /= 2;
+                }
+            }
+        }
+
+        /**
+         * Return the buffer into which moves are generated at ply PLY,
+         * creating it on first use.
+         */
+        private int[] generateBuffer(int ply) {
+            if (_generateBuffers[ply] == null) {
+                _generateBuffers[ply] = new int[Board.MAX_MOVES];
+            }
+            return _generateBuffers[ply];
+        }
+
+        /**
+         * Return the buffer of queen moves (for split mode) at ply PLY,
+         * creating it on first use.
+         */
+        private int[] queenBuffer(int ply) {
+            if (_queenBuffers[ply] == null) {
+                _queenBuffers[ply] = new int[MAX_QUEEN_MOVES];
+            }
+            return _queenBuffers[ply];
+        }
+
+        /**
+         * Return the buffer of scores of the queen moves (for split mode)
+         * at ply PLY, creating it on first use.
+         */
+        private int[] queenScoreBuffer(int ply) {
+            if (_queenScoreBuffers[ply] == null) {
+                _queenScoreBuffers[ply] = new int[MAX_QUEEN_MOVES];
+            }
+            return _queenScoreBuffers[ply];
+        }
+
+        /**
+         * Return the buffer of history scores for the moves at ply PLY,
+         * creating it on first use.
+         */
+        private int[] scoreBuffer(int ply) {
+            if (_scoreBuffers[ply] == null) {
+                _scoreBuffers[ply] = new int[Board.MAX_MOVES];
+            }
+            return _scoreBuffers[ply];
+        }
+
+        /**
+         * The board searched.
+         */
+        private final Board _board;
+
+        /**
+         * Depths searched by iterate.
+         */
+        private final int _firstDepth, _limit;
+
+        /**
+         * True iff this is a helper search.
+         */
+        private final boolean _helper;
+
+        /**
+         * The code of the move found by the last call to findMove with
+         * SAVEMOVE.
+         */
+        private int _lastFoundMove;
+
+        /**
+         * This thread's evaluation function.
+         */
+        private final Evaluator _eval;
+
+        /**
+         * This thread's endgame analyzer.
+         */
+        private final Endgame _endgame = new Endgame();
+
+        /**
+         * Per-ply buffers of move codes, reused from node to node.
+         */
+        private final int[][] _moveBuffers = new int[MAX_DEPTH + 1][];
+
+        /**
+         * Per-ply buffers of freshly generated moves and of the history
+         * scores of the moves being searched.
+         */
+        private final int[][] _generateBuffers = new int[MAX_DEPTH + 1][],
+            _scoreBuffers = new int[MAX_DEPTH + 1][];
+
+        /**
+         * Per-ply buffers of queen moves for split mode, and of their
+         * scores.
+         */
+        private final int[][] _queenBuffers = new int[MAX_DEPTH + 1][],
+            _queenScoreBuffers = new int[MAX_DEPTH + 1][];
+
+        /**
+         * Scores and moves packed for sortMoves, which finishes with it
+         * before the search goes deeper.
+         */
+        private final long[] _sortBuffer = new long[Board.MAX_MOVES];
+
+        /**
+         * The number of queen moves at each ply, and the number already
+         * expanded into spear throws.
+         */
+        private final int[] _numQueens = new int[MAX_DEPTH + 1],
+            _queensUsed = new int[MAX_DEPTH + 1];
+
+        /**
+         * The last two distinct moves that caused cutoffs at each ply,
+         * most recent first, or 0.
+         */
+        private final int[][] _killers = new int[MAX_DEPTH + 1][2];
+
+        /**
+         * History scores of piece moves, indexed by from * SQUARES + to,
+         * and of spear throws, indexed by to * SQUARES + spear: the sum
+         * of the squared depths of the searches they cut off.
+         */
+        private final int[] _history = new int[SQUARES * SQUARES],
+            _spearHistory = new int[SQUARES * SQUARES];
+
+        /**
+         * Number of cutoffs, and of those caused by the first move
+         * tried.
+         */
+        private long _cutoffs, _firstMoveCutoffs;
+
+        /**
+         * Distance of the current node from the root.
+         */
+        private int _ply;
+
+        /**
+         * Nodes visited so far by this search.
+         */
+        private long _nodes;
+
+        /**
+         * Nodes expanded (searched below), children searched from them,
+         * and static evaluations made.
+         */
+        private long _interior, _children, _evaluations;
+
+        /**
+         * Transposition table probes, and those that found an entry.
+         */
+        private long _tableProbes, _tableHits;
+
+        /**
+         * Times taken by the completed iterations, in milliseconds.
+         */
+        private final long[] _iterationMillis = new long[MAX_DEPTH + 1];
+
+        /**
+         * Number of completed iterations.
+         */
+        private int _iterations;
+
+
+        /**
+         * True iff the current iteration has been abandoned.
+         */
+        private boolean _aborted;
     }
+
+    /**
+     * Deepest search attempted under a time limit.
+     */
+    private static final int MAX_DEPTH = 63;
+
+    /**
+     * The longest possible game, in plies (each move fills a square).
+     */
+    private static final int MAX_PLIES = Board.SIZE * Board.SIZE - 8;
+
+    /**
+     * Fewest moves that a game clock is budgeted to last.
+     */
+    private static final int MIN_MOVES_TO_GO = 5;
+
+    /**
+     * The clock is read once every CLOCK_CHECK_INTERVAL + 1 nodes.
+     */
+    private static final int CLOCK_CHECK_INTERVAL = 0x3ff;
+
+    /**
+     * Number of moves after which searches analyze the board's regions
+     * (spears rarely wall off territory earlier).
+     */
+    private static final int ENDGAME_PLIES = 30;
+
+    /**
+     * Number of squares on the board.
+     */
+    private static final int SQUARES = Board.SIZE * Board.SIZE;
+
+    /**
+     * History scores are halved when one exceeds this.
+     */
+    private static final int MAX_HISTORY = 1 << 24;
+
+    /**
+     * The largest possible number of queen moves for four amazons.
+     */
+    private static final int MAX_QUEEN_MOVES = 4 * 35;
+
+    /**
+     * The number of moves in each batch picked by a scan for the best
+     * history score before selectBest sorts the rest.
+     */
+    private static final int SELECTED_MOVES = 4;
+
+    /**
+     * In split mode, the number of queen moves expanded in the last ply
+     * of a search.
+     */
+    private static final int QUEEN_WIDTH = 8;
+
+    /**
+     * Milliseconds allowed per move, or 0 for no limit.
+     */
+    private long _moveMillis;
+
+    /**
+     * Initial game clock, in milliseconds, or 0 if there is no clock.
+     */
+    private long _clockMillis;
+
+    /**
+     * Milliseconds added to my clock after each of my moves.
+     */
+    private long _incrementMillis;
+
+    /**
+     * Milliseconds left on my game clock.
+     */
+    private long _remainingMillis;
+
+    /**
+     * Time (as from System.currentTimeMillis) at which the current
+     * search must stop.
+     */
+    private volatile long _deadline;
+
+    /**
+     * Statistics of my most recent search.
+     */
+    private SearchStats _stats = SearchStats.none(0);
+
+    /**
+     * Destination of a line per search describing it, or null.
+     */
+    private PrintStream _statsLog;
+
+    /**
+     * Monitor to which my search statistics are reported, or null.
+     */
+    private SearchMonitor _monitor;
+
+    /**
+     * Set when the main search finishes, telling helpers to stop.
+     */
+    private volatile boolean _stop;
+
+    /**
+     * Number of search threads.
+     */
+    private int _threads = 1;
+
+    /**
+     * Template for the evaluation functions of my searches.
+     */
+    private Evaluator _evaluator = new TerritoryEvaluator();
+
+    /**
+     * Runs helper searches when _threads > 1, or null if none has been
+     * needed since it was last released.
+     */
+    private ExecutorService _helperPool;
+
+    /**
+     * True iff I search during my opponent's turn.
+     */
+    private boolean _ponder;
+
+    /**
+     * My background search, or null if I am not pondering.
+     */
+    private Future<?> _pondering;
+
+    /**
+     * The Searcher of my background search.
+     */
+    private Searcher _ponderer;
+
+    /**
+     * The reply I guessed when I last started pondering.
+     */
+    private Move _ponderMove;
+
+    /**
+     * Hash of the position I last started pondering.
+     */
+    private long _ponderKey;
+
+    /**
+     * Number of ponder hits (see ponderHits).
+     */
+    private int _ponderHits;
+
+    /**
+     * Pool that runs my background searches, created on first use.
+     */
+    private ExecutorService _ponderPool;
+
+    /**
+     * Size of my transposition table, in megabytes.
+     */
+    private int _tableMegabytes = DEFAULT_TABLE_MEGABYTES;
+
+    /**
+     * My transposition table, created on my first search.
+     */
+    private TranspositionTable _table;
+
+    /**
+     * True iff searches generate queen moves and spear throws
+     * separately.
+     */
+    private boolean _splitMoves;
+
+    /**
+     * Opening book consulted before searching, or null.
+     */
+    private OpeningBook _book;
+
+    /**
+     * Seed of my random choices among book moves.
+     */
+    private long _seed;
+
+    /**
+     * Source of random choices among book moves.
+     */
+    private Random _random = new Random(0);
 }
 
@@ -0,0 +1,243 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** Occupancy bitboards for an Amazons board.  Each layer (all occupied
+ *  squares, white amazons, black amazons) is a set of Square indices
+ *  held in two longs: indices 0-63 in the low word and 64-99 in the
+ *  high word.  Sliding queen moves and spear throws are generated by
+ *  intersecting precomputed rays with the occupied layer and locating
+ *  the nearest blocker with a single bit scan.
+ *  @author Netra Sathe
+ */
+final class BitBoard {
+
+    /** Number of queen directions. */
+    static final int DIRS = 8;
+
+    /** Index change of one step in each direction, using the direction
+     *  numbering of Square.queenMove. */
+    static final int[] DELTA = {
+        1, Board.SIZE + 1, Board.SIZE, Board.SIZE - 1,
+        -1, -Board.SIZE - 1, -Board.SIZE, -Board.SIZE + 1
+    };
+
+    /** An empty set of bitboards. */
+    BitBoard() {
+    }
+
+    /** Make me a copy of MODEL. */
+    void copy(BitBoard model) {
+        _occLo = model._occLo;
+        _occHi = model._occHi;
+        _whiteLo = model._whiteLo;
+        _whiteHi = model._whiteHi;
+        _blackLo = model._blackLo;
+        _blackHi = model._blackHi;
+    }
+
+    /** Clear all layers. */
+    void clear() {
+        _occLo = _occHi = 0;
+        _whiteLo = _whiteHi = 0;
+        _blackLo = _blackHi = 0;
+    }
+
+    /** Record that the square with index SQ now holds P. */
+    void set(int sq, Piece p) {
+        if (sq < WORD) {
+            long bit = 1L << sq;
+            _occLo &= ~bit;
+            _whiteLo &= ~bit;
+            _blackLo &= ~bit;
+            if (p == WHITE) {
+                _whiteLo |= bit;
+            } else if (p == BLACK) {
+                _blackLo |= bit;
+            }
+            if (p != EMPTY) {
+                _occLo |= bit;
+            }
+        } else {
+            long bit = 1L << (sq - WORD);
+            _occHi &= ~bit;
+            _whiteHi &= ~bit;
+            _blackHi &= ~bit;
+            if (p == WHITE) {
+                _whiteHi |= bit;
+            } else if (p == BLACK) {
+                _blackHi |= bit;
+            }
+            if (p != EMPTY) {
+                _occHi |= bit;
+            }
+        }
+    }
+
+    /** Return true iff the square with index SQ is occupied. */
+    boolean occupied(int sq) {
+        if (sq < WORD) {
+            return (_occLo & (1L << sq)) != 0;
+        }
+        return (_occHi & (1L << (sq - WORD))) != 0;
+    }
+
+    /** Fill SQUARES with the indices of the amazons of color SIDE, in
+     *  increasing order, and return how many there are. */
+    int amazons(Piece side, int[] squares) {
+        long lo = side == WHITE ? _whiteLo : side == BLACK ? _blackLo : 0;
+        long hi = side == WHITE ? _whiteHi : side == BLACK ? _blackHi : 0;
+        int n = 0;
+        while (lo != 0) {
+            squares[n++] = Long.numberOfTrailingZeros(lo);
+            lo &= lo - 1;
+        }
+        while (hi != 0) {
+            squares[n++] = WORD + Long.numberOfTrailingZeros(hi);
+            hi &= hi - 1;
+        }
+        return n;
+    }
+
+    /** Return true iff some amazon of color SIDE has an empty neighbor,
+     *  i.e., iff SIDE has a legal move (a piece that can step anywhere
+     *  can always throw its spear back to where it came from). */
+    boolean canMove(Piece side) {
+        long lo = side == WHITE ? _whiteLo : side == BLACK ? _blackLo : 0;
+        long hi = side == WHITE ? _whiteHi : side == BLACK ? _blackHi : 0;
+        while (lo != 0) {
+            int s = Long.numberOfTrailingZeros(lo);
+            if (hasEmptyNeighbor(s)) {
+                return true;
+            }
+            lo &= lo - 1;
+        }
+        while (hi != 0) {
+            int s = WORD + Long.numberOfTrailingZeros(hi);
+            if (hasEmptyNeighbor(s)) {
+                return true;
+            }
+            hi &= hi - 1;
+        }
+        return false;
+    }
+
+    /** Return true iff some square adjacent to SQ is empty. */
+    private boolean hasEmptyNeighbor(int sq) {
+        return ((NEIGHBORS_LO[sq] & ~_occLo) | (NEIGHBORS_HI[sq] & ~_occHi))
+            != 0;
+    }
+
+    /** Return the index of the nearest occupied square strictly beyond
+     *  FROM in direction DIR, ignoring ASEMPTY (which may be -1), or -1
+     *  if the ray reaches the edge of the board unobstructed. */
+    int blocker(int from, int dir, int asEmpty) {
+        long lo = _occLo & RAY_LO[dir][from];
+        long hi = _occHi & RAY_HI[dir][from];
+        if (asEmpty >= 0) {
+            if (asEmpty < WORD) {
+                lo &= ~(1L << asEmpty);
+            } else {
+                hi &= ~(1L << (asEmpty - WORD));
+            }
+        }
+        if (DELTA[dir] > 0) {
+            if (lo != 0) {
+                return Long.numberOfTrailingZeros(lo);
+            } else if (hi != 0) {
+                return WORD + Long.numberOfTrailingZeros(hi);
+            }
+        } else {
+            if (hi != 0) {
+                return 2 * WORD - 1 - Long.numberOfLeadingZeros(hi);
+            } else if (lo != 0) {
+                return WORD - 1 - Long.numberOfLeadingZeros(lo);
+            }
+        }
+        return -1;
+    }
+
+    /** Return the number of empty squares reachable from FROM in
+     *  direction DIR, treating ASEMPTY (which may be -1) as empty. */
+    int reach(int from, int dir, int asEmpty) {
+        int stop = blocker(from, dir, asEmpty);
+        if (stop < 0) {
+            return RAY_LENGTH[dir][from];
+        }
+        return (stop - from) / DELTA[dir] - 1;
+    }
+
+    /** Return true iff every square after FROM up to and including TO
+     *  is empty, ignoring ASEMPTY (which may be -1).  FROM-TO must be a
+     *  queen move. */
+    boolean clear(int from, int to, int asEmpty) {
+        if (occupied(to) && to != asEmpty) {
+            return false;
+        }
+        long lo = _occLo & Square.betweenLo(from, to);
+        long hi = _occHi & Square.betweenHi(from, to);
+        if (asEmpty >= 0) {
+            if (asEmpty < WORD) {
+                lo &= ~(1L << asEmpty);
+            } else {
+                hi &= ~(1L << (asEmpty - WORD));
+            }
+        }
+        return (lo | hi) == 0;
+    }
+
+    /** Number of bits in a word. */
+    private static final int WORD = 64;
+
+    /** RAY_LO[d][s] and RAY_HI[d][s] are the low and high words of the
+     *  set of squares strictly beyond s in direction d. */
+    private static final long[][] RAY_LO = new long[DIRS][];
+    /** High words of the rays (see RAY_LO). */
+    private static final long[][] RAY_HI = new long[DIRS][];
+    /** RAY_LENGTH[d][s] is the number of squares beyond s in
+     *  direction d. */
+    private static final int[][] RAY_LENGTH = new int[DIRS][];
+    /** NEIGHBORS_LO[s] and NEIGHBORS_HI[s] are the low and high words of
+     *  the set of squares adjacent to s. */
+    private static final long[] NEIGHBORS_LO =
+        new long[Board.SIZE * Board.SIZE];
+    /** High words of the neighbor sets (see NEIGHBORS_LO). */
+    private static final long[] NEIGHBORS_HI =
+        new long[Board.SIZE * Board.SIZE];
+
+    static {
+        int n = Board.SIZE * Board.SIZE;
+        for (int dir = 0; dir < DIRS; dir += 1) {
+            RAY_LO[dir] = new long[n];
+            RAY_HI[dir] = new long[n];
+            RAY_LENGTH[dir] = new int[n];
+            for (int s = 0; s < n; s += 1) {
+                Square from = Square.sq(s);
+                for (int k = 1;; k += 1) {
+                    Square to = from.queenMove(dir, k);
+                    if (to == null) {
+                        break;
+                    }
+                    int i = to.index();
+                    if (i < WORD) {
+                        RAY_LO[dir][s] |= 1L << i;
+                    } else {
+                        RAY_HI[dir][s] |= 1L << (i - WORD);
+                    }
+                    RAY_LENGTH[dir][s] = k;
+                    if (k == 1) {
+                        NEIGHBORS_LO[s] |= RAY_LO[dir][s];
+                        NEIGHBORS_HI[s] |= RAY_HI[dir][s];
+                    }
+                }
+            }
+        }
+    }
+
+    /** Occupied squares. */
+    private long _occLo, _occHi;
+    /** Squares holding white amazons. */
+    private long _whiteLo, _whiteHi;
+    /** Squares holding black amazons. */
+    private long _blackLo, _blackHi;
+}
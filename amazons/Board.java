@@ -1,12 +1,12 @@
 package amazons;
 import javax.print.attribute.AttributeSetUtilities;
-import java.util.Stack;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Collections;
 import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static amazons.Piece.*;
-import static amazons.Move.mv;
 
 
 /** The state of an Amazons Game.
@@ -16,14 +16,21 @@ class Board {
 
     /** The number of squares on a side of the board. */
     static final int SIZE = 10;
-    /** Board representation of the Amazons game. */
-    protected Piece[][] amazonboard;
-    /**The stack that stores all the moves.*/
-    protected Stack<Move> stacc;
+    /** Board representation of the Amazons game: amazonboard[i] is the
+     *  contents of the square with index i, so that a board is copied with
+     *  one arraycopy. */
+    protected final Piece[] amazonboard = new Piece[SIZE * SIZE];
     /** Integer that tells you the number of moves. */
     protected int movez;
+    /** The largest possible number of legal moves when each side has four
+     *  pieces: no square has more than 35 queen moves. */
+    static final int MAX_MOVES = 4 * 35 * 35;
     /** Last index of Squares array.*/
     private static final int END = 99;
+    /** The most moves that can be made from any position (92 from the
+     *  initial one): every move fills a square.  Positions set with
+     *  setPosition may have fewer than eight amazons. */
+    static final int MAX_PLIES = SIZE * SIZE;
 
 
     /** Initializes a game board with SIZE squares on a side in the
@@ -32,27 +39,32 @@ class Board {
         init();
     }
 
-    /** Initializes a copy of MODEL. */
+    /** Initializes a copy of MODEL, sharing nothing with it (so that, e.g.,
+     *  each search thread can have its own). */
     Board(Board model) {
         copy(model);
     }
 
-    /** Copies MODEL into me. */
+    /** Copies MODEL into me.  Every part of my state is a flat array or a
+     *  scalar, copied with arraycopy (the undo log only as far as it is in
+     *  use), so this allocates nothing, and afterwards MODEL and I share
+     *  no mutable state: either may be handed to another thread. */
     void copy(Board model) {
         if (model == this) {
             return;
         } else {
-            init();
-
-            for (int i = 0; i < SIZE; i++) {
-                for (int j = 0; j < SIZE; j++) {
-                    this.amazonboard[i][j] = model.amazonboard[i][j];
-                }
-            }
+            System.arraycopy(model.amazonboard, 0, amazonboard, 0,
+                             amazonboard.length);
             this._turn = model._turn;
             this._winner = model._winner;
             this.movez = model.movez;
-            this.stacc = model.stacc;
+            this._bits.copy(model._bits);
+            this._key = model._key;
+            _plies = model._plies;
+            System.arraycopy(model._undoMoves, 0, _undoMoves, 0, _plies);
+            System.arraycopy(model._undoKeys, 0, _undoKeys, 0, _plies);
+            System.arraycopy(model._undoWinners, 0, _undoWinners, 0,
+                             _plies);
         }
     }
 
@@ -61,23 +73,34 @@ class Board {
         _turn = WHITE;
         _winner = EMPTY;
         movez = 0;
-        stacc = new Stack<>();
-        amazonboard = new Piece[SIZE][SIZE];
+        _plies = 0;
+        System.arraycopy(INITIAL, 0, amazonboard, 0, amazonboard.length);
+
+        _bits.clear();
+        _key = 0;
+        for (int i = 0; i <= END; i += 1) {
+            _bits.set(i, amazonboard[i]);
+            _key ^= ZOBRIST[amazonboard[i].ordinal()][i];
+        }
+    }
 
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                amazonboard[i][j] = EMPTY;
+    /** Set my contents so that the square with index i holds
+     *  CONTENTS[i], with SIDE (WHITE or BLACK) to move, and forget my
+     *  move history.  Since every move throws one spear, the number of
+     *  moves is taken to be the number of spears. */
+    void setPosition(Piece[] contents, Piece side) {
+        init();
+        int spears = 0;
+        for (int i = 0; i <= END; i += 1) {
+            put(contents[i], Square.sq(i));
+            if (contents[i] == SPEAR) {
+                spears += 1;
             }
         }
-
-        amazonboard[6][0] = BLACK;
-        amazonboard[9][3] = BLACK;
-        amazonboard[9][6] = BLACK;
-        amazonboard[6][9] = BLACK;
-        amazonboard[0][3] = WHITE;
-        amazonboard[0][6] = WHITE;
-        amazonboard[3][0] = WHITE;
-        amazonboard[3][9] = WHITE;
+        if (side != _turn) {
+            change();
+        }
+        movez = spears;
     }
 
     /** Return the Piece whose move it is (WHITE or BLACK). */
@@ -92,13 +115,32 @@ class Board {
     }
 
     /** Return the winner in the current position, or null if the game is
-     *  not yet finished. */
+     *  not yet finished.  The answer is cached until the board next
+     *  changes. */
     Piece winner() {
-        if (!legalMoves(_turn).hasNext()) {
-            return _turn.opponent();
-        } else {
-            return null;
+        if (_winner == EMPTY) {
+            _winner = hasMove(_turn) ? null : _turn.opponent();
         }
+        return _winner;
+    }
+
+    /** Return true iff SIDE has at least one legal move, regardless of
+     *  whose turn it is.  Stops at the first movable piece rather than
+     *  generating moves. */
+    boolean hasMove(Piece side) {
+        return _bits.canMove(side);
+    }
+
+    /** Return a Zobrist hash of this position (contents and side to
+     *  move), maintained incrementally as squares change. */
+    long hash() {
+        return _key;
+    }
+
+    /** Fill SQUARES with the indices of the squares holding SIDE's
+     *  amazons, in increasing order, and return how many there are. */
+    int amazons(Piece side, int[] squares) {
+        return _bits.amazons(side, squares);
     }
 
     /** Return the contents the square at S. */
@@ -109,7 +151,7 @@ class Board {
     /** Return the contents of the square at (COL, ROW), where
      *  0 <= COL, ROW <= 9. */
     final Piece get(int col, int row) {
-        return this.amazonboard[row][col];
+        return this.amazonboard[row * SIZE + col];
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -124,8 +166,22 @@ class Board {
 
     /** Set square (COL, ROW) to P. */
     final void put(Piece p, int col, int row) {
-        amazonboard[row][col] = p;
-        _winner = winner();
+        place(row * SIZE + col, p);
+    }
+
+    /** Set the square with index INDEX to P. */
+    private void place(int index, Piece p) {
+        set(index, p);
+        _winner = EMPTY;
+    }
+
+    /** Set the square with index INDEX to P, updating the hash and
+     *  bitboards but nothing else. */
+    private void set(int index, Piece p) {
+        _key ^= ZOBRIST[amazonboard[index].ordinal()][index]
+            ^ ZOBRIST[p.ordinal()][index];
+        amazonboard[index] = p;
+        _bits.set(index, p);
     }
 
     /** Set square COL ROW to P. */
@@ -141,21 +197,9 @@ class Board {
     boolean isUnblockedMove(Square from, Square to, Square asEmpty) {
         if (!from.isQueenMove(to)) {
             return false;
-        } else {
-            int direction = from.direction(to);
-            Square once = from;
-            while (once != to) {
-                once = once.queenMove(direction, 1);
-                if (this.get(once) != EMPTY) {
-                    if (once == asEmpty) {
-                        continue;
-                    } else {
-                        return false;
-                    }
-                }
-            }
-            return true;
         }
+        return _bits.clear(from.index(), to.index(),
+                asEmpty == null ? -1 : asEmpty.index());
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
@@ -163,7 +207,7 @@ class Board {
         if (from.index() < 0 || from.index() > END) {
             return false;
         } else {
-            return (amazonboard[from.row()][from.col()] == this._turn);
+            return (amazonboard[from.index()] == this._turn);
         }
     }
 
@@ -189,6 +233,13 @@ class Board {
         return false;
     }
 
+    /** Return true iff the move whose code (see Move.code) is MOVE is
+     *  legal in the current position. */
+    boolean isLegal(int move) {
+        return isLegal(Square.sq(Move.from(move)), Square.sq(Move.to(move)),
+                       Square.sq(Move.spear(move)));
+    }
+
     /** Return true iff MOVE is a legal move in the current
      *  position. */
     boolean isLegal(Move move) {
@@ -203,24 +254,35 @@ class Board {
         } else {
             this._turn = WHITE;
         }
+        _key ^= ZOBRIST_BLACK_TO_MOVE;
+        _winner = EMPTY;
     }
 
 
     /** Move FROM-TO(SPEAR), assuming this is a legal move. */
     void makeMove(Square from, Square to, Square spear) {
         if (isLegal(from, to, spear)) {
-            Piece mooove = amazonboard[from.row()][from.col()];
-            put(mooove, to);
-            put(EMPTY, from);
-            put(SPEAR, spear);
-            Move stax = mv(from, to, spear);
-            this.stacc.push(stax);
-            change();
-            this.movez++;
-
+            makeMove(Move.code(from.index(), to.index(), spear.index()));
         }
     }
 
+    /** Make the move whose code (see Move.code) is MOVE.  Unlike the other
+     *  makeMove methods, does not check that the move is legal: it must
+     *  be (as are those produced by legalMoves). */
+    void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move);
+        int n = _plies;
+        _undoMoves[n] = move;
+        _undoKeys[n] = _key;
+        _undoWinners[n] = _winner;
+        _plies = n + 1;
+        place(to, amazonboard[from]);
+        place(from, EMPTY);
+        place(Move.spear(move), SPEAR);
+        change();
+        this.movez++;
+    }
+
     /** Move according to MOVE, assuming it is a legal move. */
     void makeMove(Move move) {
         if (isLegal(move)) {
@@ -228,17 +290,23 @@ class Board {
         }
     }
 
-    /** Undo one move.  Has no effect on the initial board. */
+    /** Undo one move.  Has no effect on the initial board, nor on one
+     *  just set by setPosition.  The squares, hash and cached winner are
+     *  restored from my undo log, which is preallocated, so this neither
+     *  allocates nor rescans the board. */
     void undo() {
-        Move fix = this.stacc.pop();
-        Square spearfix = fix.spear();
-        Square queenfix = fix.to();
-        Square fixall = fix.from();
-
-        change();
-        put(EMPTY, spearfix);
-        put(get(queenfix), fixall);
-        put(EMPTY, queenfix);
+        if (_plies == 0) {
+            return;
+        }
+        int n = _plies -= 1;
+        int move = _undoMoves[n];
+        int from = Move.from(move), to = Move.to(move);
+        set(Move.spear(move), EMPTY);
+        set(from, amazonboard[to]);
+        set(to, EMPTY);
+        _key = _undoKeys[n];
+        _winner = _undoWinners[n];
+        _turn = _turn.opponent();
         this.movez -= 1;
     }
 
@@ -264,134 +332,180 @@ class Board {
         return new LegalMoveIterator(side);
     }
 
-    /** An iterator used by reachableFrom. */
+    /** Fill MOVES with the codes (see Move.code) of all legal moves for
+     *  the side to move, and return how many there are. */
+    int legalMoves(int[] moves) {
+        return legalMoves(_turn, moves);
+    }
+
+    /** Fill MOVES with the codes (see Move.code) of all legal moves for
+     *  SIDE (regardless of whose turn it is), and return how many there
+     *  are.  MOVES must have room for them all; MAX_MOVES suffices when
+     *  SIDE has at most four pieces.  Creates no objects: each direction
+     *  from each piece and from each of its destinations is scanned
+     *  once, with its extent taken from the bitboards. */
+    int legalMoves(Piece side, int[] moves) {
+        int[] queens = _queens;
+        int numQueens = _bits.amazons(side, queens);
+        int n = 0;
+        for (int q = 0; q < numQueens; q += 1) {
+            n = addPieceMoves(queens[q], moves, n);
+        }
+        return n;
+    }
+
+    /** Fill MOVES with the codes of all legal moves of the amazon on the
+     *  square with index FROM (regardless of whose turn it is), and
+     *  return how many there are. */
+    int pieceMoves(int from, int[] moves) {
+        return addPieceMoves(from, moves, 0);
+    }
+
+    /** Store the codes of all legal moves of the amazon on the square
+     *  with index FROM in MOVES, starting at index N, and return the
+     *  index after the last one stored. */
+    private int addPieceMoves(int from, int[] moves, int n) {
+        for (int dir = 0; dir < BitBoard.DIRS; dir += 1) {
+            int delta = BitBoard.DELTA[dir];
+            int to = from;
+            for (int k = _bits.reach(from, dir, -1); k > 0; k -= 1) {
+                to += delta;
+                for (int dir2 = 0; dir2 < BitBoard.DIRS; dir2 += 1) {
+                    int delta2 = BitBoard.DELTA[dir2];
+                    int spear = to;
+                    for (int j = _bits.reach(to, dir2, from); j > 0;
+                         j -= 1) {
+                        spear += delta2;
+                        moves[n++] = Move.code(from, to, spear);
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Fill QUEENMOVES with the codes Move.code(from, to, 0) of the queen
+     *  moves from-to of SIDE's amazons that can be followed by a spear
+     *  throw, and return how many there are.  With spearThrows, this
+     *  generates the same moves as legalMoves(SIDE, ...), one queen move
+     *  at a time. */
+    int queenMoves(Piece side, int[] queenMoves) {
+        int[] queens = _queens;
+        int numQueens = _bits.amazons(side, queens);
+        int n = 0;
+        for (int q = 0; q < numQueens; q += 1) {
+            int from = queens[q];
+            for (int dir = 0; dir < BitBoard.DIRS; dir += 1) {
+                int delta = BitBoard.DELTA[dir];
+                int to = from;
+                for (int k = _bits.reach(from, dir, -1); k > 0; k -= 1) {
+                    to += delta;
+                    queenMoves[n++] = Move.code(from, to, 0);
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Fill MOVES with the codes of all legal moves FROM-TO(spear), where
+     *  FROM-TO is one of the queen moves produced by queenMoves, and
+     *  return how many there are. */
+    int spearThrows(int from, int to, int[] moves) {
+        int n = 0;
+        for (int dir = 0; dir < BitBoard.DIRS; dir += 1) {
+            int delta = BitBoard.DELTA[dir];
+            int spear = to;
+            for (int j = _bits.reach(to, dir, from); j > 0; j -= 1) {
+                spear += delta;
+                moves[n++] = Move.code(from, to, spear);
+            }
+        }
+        return n;
+    }
+
+    /** An iterator used by reachableFrom.  Each direction is scanned
+     *  once: the nearest blocker is found on the bitboards, and the
+     *  squares before it are then produced by stepping the index. */
     private class ReachableFromIterator implements Iterator<Square> {
 
         /** Iterator of all squares reachable by queen move from FROM,
          *  treating ASEMPTY as empty. */
         ReachableFromIterator(Square from, Square asEmpty) {
-            _from = from;
-            _dir = 0;
-            _steps = 0;
-            _asEmpty = asEmpty;
+            _from = from.index();
+            _asEmpty = asEmpty == null ? -1 : asEmpty.index();
+            _dir = -1;
+            _left = 0;
             toNext();
         }
 
         @Override
         public boolean hasNext() {
-            return _dir < 8;
+            return _left > 0;
         }
 
         @Override
         public Square next() {
-            Square nexttt = this._from.queenMove(_dir, _steps);
+            if (_left == 0) {
+                throw new NoSuchElementException();
+            }
+            _at += BitBoard.DELTA[_dir];
+            _left -= 1;
+            Square nexttt = Square.sq(_at);
             toNext();
             return nexttt;
         }
 
-        /** Advance _dir and _steps, so that the next valid Square is
-         *  _steps steps in direction _dir from _from. */
+        /** If the current direction is exhausted, advance _dir to the
+         *  next direction with at least one reachable square. */
         private void toNext() {
-            if (!isUnblockedMove(this._from, this._from.queenMove(_dir,
-                    _steps + 1), _asEmpty)) {
-                _steps = 1;
+            while (_left == 0 && _dir < BitBoard.DIRS - 1) {
                 _dir += 1;
-                while (!isUnblockedMove(this._from, this._from.queenMove(_dir,
-                        _steps), _asEmpty) && _dir < 8) {
-                    _dir += 1;
-                }
-            } else {
-                _steps += 1;
+                _at = _from;
+                _left = _bits.reach(_from, _dir, _asEmpty);
             }
         }
 
-        /** Starting square. */
-        private Square _from;
+        /** Index of the starting square. */
+        private int _from;
         /** Current direction. */
         private int _dir;
-        /** Current distance. */
-        private int _steps;
-        /** Square treated as empty. */
-        private Square _asEmpty;
+        /** Index of the last square returned in direction _dir. */
+        private int _at;
+        /** Squares remaining in direction _dir. */
+        private int _left;
+        /** Index of the square treated as empty, or -1. */
+        private int _asEmpty;
     }
 
-    /** An iterator used by legalMoves. */
-    /** An iterator used by legalMoves. */
+    /** An iterator used by legalMoves: a convenience view of the codes
+     *  produced by legalMoves(Piece, int[]). */
     private class LegalMoveIterator implements Iterator<Move> {
 
         /** All legal moves for SIDE (WHITE or BLACK). */
         LegalMoveIterator(Piece side) {
-            _startingSquares = Square.iterator();
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            _fromPiece = side;
-            queenz = 0;
-            toNext();
+            _moves = new int[MAX_MOVES];
+            _numMoves = legalMoves(side, _moves);
         }
 
         @Override
         public boolean hasNext() {
-            return _startingSquares.hasNext();
+            return _next < _numMoves;
         }
 
         @Override
         public Move next() {
-            Move nextagain = Move.mv(_start, _nextSquare, spearz);
-            toNext();
-            return nextagain;
-        }
-
-        /** Advance so that the next valid Move is
-         *  _start-_nextSquare(sp), where sp is the next value of
-         *  _spearThrows. */
-        private void toNext() {
-            if (!_spearThrows.hasNext()) {
-                if (!_pieceMoves.hasNext()) {
-                    while (_startingSquares.hasNext()) {
-                        Square netrasquare = _startingSquares.next();
-                        if (amazonboard[netrasquare.row()]
-                                [netrasquare.col()] == _fromPiece) {
-                            _start = netrasquare;
-                            _pieceMoves = reachableFrom
-                                    (_start, null);
-                            _nextSquare = _pieceMoves.next();
-                            if (_nextSquare == null) {
-                                continue;
-                            }
-                            _spearThrows = reachableFrom(_nextSquare,
-                                    _start);
-                            spearz = _spearThrows.next();
-                            break;
-                        }
-                    }
-                } else {
-                    _nextSquare = _pieceMoves.next();
-                    _spearThrows = reachableFrom(_nextSquare, _start);
-                    spearz = _spearThrows.next();
-                }
-            } else {
-                spearz = _spearThrows.next();
+            if (_next == _numMoves) {
+                throw new NoSuchElementException();
             }
+            return Move.mv(_moves[_next++]);
         }
 
-
-
-        /**The number of side pieces that we have returned legal moves for. */
-        private int queenz;
-        /** The current square which the spear is thrown to.*/
-        private Square spearz;
-        /** The colour of the side we are iterating. */
-        private Piece _fromPiece;
-        /** Current starting square. */
-        private Square _start;
-        /** Remaining starting squares to consider. */
-        private Iterator<Square> _startingSquares;
-        /** Current piece's new position. */
-        private Square _nextSquare;
-        /** Remaining moves from _start to consider. */
-        private Iterator<Square> _pieceMoves;
-        /** Remaining spear throws from _piece to consider. */
-        private Iterator<Square> _spearThrows;
+        /** Codes of all the moves. */
+        private int[] _moves;
+        /** Number of moves in _moves. */
+        private int _numMoves;
+        /** Index of the next move to return. */
+        private int _next;
     }
 
 
@@ -401,21 +515,68 @@ class Board {
         for (int i = 9; i >= 0; i--) {
             stringg.append("   ");
             for (int j = 0; j < 9; j++) {
-                stringg.append(amazonboard[i][j] + " ");
+                stringg.append(amazonboard[i * SIZE + j] + " ");
             }
-            stringg.append(amazonboard[i][9]);
+            stringg.append(amazonboard[i * SIZE + 9]);
             stringg.append("\n");
         }
         return stringg.toString();
     }
 
-    /** An empty iterator for initialization. */
-    private static final Iterator<Square> NO_SQUARES =
-            Collections.emptyIterator();
+    /** Contents of the squares in the initial position, by index. */
+    private static final Piece[] INITIAL = new Piece[SIZE * SIZE];
+
+    static {
+        Arrays.fill(INITIAL, EMPTY);
+        for (String sq : new String[] { "d1", "g1", "a4", "j4" }) {
+            INITIAL[Square.sq(sq).index()] = WHITE;
+        }
+        for (String sq : new String[] { "a7", "j7", "d10", "g10" }) {
+            INITIAL[Square.sq(sq).index()] = BLACK;
+        }
+    }
+
+    /** ZOBRIST[p.ordinal()][i] is the hash contribution of Piece p on the
+     *  square with index i; it is 0 for EMPTY.  The seed is fixed so that
+     *  hashes are stable from run to run. */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][SIZE * SIZE];
+    /** Hash contribution of black being on move. */
+    private static final long ZOBRIST_BLACK_TO_MOVE;
+
+    static {
+        Random rand = new Random(0x5eed_a3a2_0e5L);
+        for (Piece p : Piece.values()) {
+            if (p != EMPTY) {
+                for (int i = 0; i < SIZE * SIZE; i += 1) {
+                    ZOBRIST[p.ordinal()][i] = rand.nextLong();
+                }
+            }
+        }
+        ZOBRIST_BLACK_TO_MOVE = rand.nextLong();
+    }
 
     /** Piece whose turn it is (BLACK or WHITE). */
     private Piece _turn;
     /** Cached value of winner on this board, or EMPTY if it has not been
      *  computed. */
     private Piece _winner;
+    /** Occupancy bitboards mirroring amazonboard. */
+    private final BitBoard _bits = new BitBoard();
+    /** Zobrist hash of the current position. */
+    private long _key;
+    /** Scratch space for the squares of one side's pieces. */
+    private final int[] _queens = new int[SIZE * SIZE];
+    /** Number of moves in my undo log: those made since the last init or
+     *  setPosition and not undone. */
+    private int _plies;
+    /** _undoMoves[i] is the code of move i of the undo log, and
+     *  _undoKeys[i] and _undoWinners[i] are _key and _winner just before
+     *  it was made. */
+    private final int[] _undoMoves = new int[MAX_PLIES];
+    /** Hashes before each move of the undo log (see _undoMoves). */
+    private final long[] _undoKeys = new long[MAX_PLIES];
+    /** Cached winners before each move of the undo log (see
+     *  _undoMoves). */
+    private final Piece[] _undoWinners = new Piece[MAX_PLIES];
 }
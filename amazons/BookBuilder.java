@@ -0,0 +1,160 @@
+package amazons;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+/** Builds an OpeningBook offline from self-play.  Each game follows the
+ *  moves of a fixed-depth search for its first few plies, except that,
+ *  to reach a variety of positions, some of the moves (chosen at random
+ *  with a given probability) are replaced by random legal moves.  The
+ *  move the search chooses in each position visited is added to the
+ *  book with weight 1, so a move's weight is the number of times the
+ *  search preferred it.  The default search is shallow (see DEPTH);
+ *  --depth buys a better book at a steep price in time.
+ *  @author Netra Sathe
+ */
+public class BookBuilder {
+
+    /** Build the book described by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--out= --in={0,1} --games=(\\d+){0,1}"
+                            + " --plies=(\\d+){0,1} --depth=(\\d+){0,1}"
+                            + " --explore=(\\d+){0,1} --seed=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1} --hash=(\\d+){0,1}",
+                            args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.BookBuilder --out=FILE"
+                               + " [--in=FILE] [--games=N] [--plies=N]"
+                               + " [--depth=N] [--explore=PERCENT]"
+                               + " [--seed=N] [--threads=N] [--hash=MB]");
+            System.exit(1);
+        }
+
+        try {
+            OpeningBook.Builder builder = new OpeningBook.Builder();
+            if (options.contains("--in")) {
+                builder.addAll(new OpeningBook(options.getFirst("--in")));
+            }
+            BookBuilder games =
+                new BookBuilder(builder, intOption(options, "--plies", PLIES),
+                                intOption(options, "--depth", DEPTH),
+                                intOption(options, "--explore", EXPLORE),
+                                intOption(options, "--seed", 0),
+                                intOption(options, "--hash",
+                                          AI.DEFAULT_TABLE_MEGABYTES));
+            long start = System.currentTimeMillis();
+            games.run(intOption(options, "--games", GAMES),
+                      intOption(options, "--threads",
+                                Runtime.getRuntime().availableProcessors()));
+            builder.write(options.getFirst("--out"));
+            System.out.printf("%d positions in %.1f s%n",
+                              builder.positions(),
+                              (System.currentTimeMillis() - start) / 1000.0);
+            System.exit(0);
+        } catch (IOException | IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A book generator adding to BUILDER the moves chosen by searches
+     *  DEPTH plies deep (with HASH-megabyte transposition tables) in the
+     *  first PLIES plies of each game, replacing EXPLORE percent of the
+     *  moves played by random ones chosen using seeds derived from
+     *  SEED. */
+    BookBuilder(OpeningBook.Builder builder, int plies, int depth,
+                int explore, long seed, int hash) {
+        _builder = builder;
+        _plies = plies;
+        _depth = depth;
+        _explore = explore;
+        _seed = seed;
+        _hash = hash;
+    }
+
+    /** Play GAMES games using THREADS threads. */
+    void run(int games, int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> pending = new ArrayList<>();
+        for (int g = 0; g < games; g += 1) {
+            final int game = g;
+            pending.add(pool.submit(() -> play(game)));
+        }
+        try {
+            for (Future<?> result : pending) {
+                result.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Play the opening of game number GAME, adding the searched moves
+     *  to the book. */
+    void play(int game) {
+        AI ai = new AI(_hash);
+        Board board = new Board();
+        Random random = new Random(_seed + game);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int ply = 0; ply < _plies && board.winner() == null;
+             ply += 1) {
+            int move = ai.findMove(board, _depth).code();
+            synchronized (_builder) {
+                _builder.add(board.hash(), move, 1);
+            }
+            if (random.nextInt(PERCENT) < _explore) {
+                move = moves[random.nextInt(board.legalMoves(moves))];
+            }
+            board.makeMove(move);
+        }
+    }
+
+    /** Return the value of integer option KEY in OPTIONS, or DEFAULTVALUE
+     *  if it is absent. */
+    private static int intOption(CommandArgs options, String key,
+                                 int defaultValue) {
+        if (options.contains(key)) {
+            return Integer.parseInt(options.getFirst(key));
+        }
+        return defaultValue;
+    }
+
+    /** Default number of games. */
+    private static final int GAMES = 100;
+    /** Default number of plies per game covered by the book. */
+    private static final int PLIES = 20;
+    /** Default search depth.  The opening has over 2000 moves a ply, so
+     *  the cost of a search grows very fast with depth: on one core, a
+     *  game of PLIES plies takes about 3 s at depth 2 and 8 minutes at
+     *  depth 3, which would make the default of GAMES games take most of
+     *  a day. */
+    private static final int DEPTH = 2;
+    /** Default percentage of random moves. */
+    private static final int EXPLORE = 30;
+    /** Scale of percentages. */
+    private static final int PERCENT = 100;
+
+    /** Destination of the moves found. */
+    private final OpeningBook.Builder _builder;
+    /** Number of plies per game covered by the book. */
+    private final int _plies;
+    /** Search depth. */
+    private final int _depth;
+    /** Percentage of moves replaced by random ones. */
+    private final int _explore;
+    /** Base random seed. */
+    private final long _seed;
+    /** Size of each search's transposition table, in megabytes. */
+    private final int _hash;
+}
@@ -0,0 +1,207 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** The position representation shared by Playout and SizedBoard, on a
+ *  board of any size (see Geometry).  The position is a flat array of
+ *  byte cells with a border of blocked cells around the board, so that
+ *  scanning a ray needs no bounds checks, and each side's amazons are
+ *  kept in a short list of cells.  Squares are identified by their
+ *  indices (row * size + col) and moves by their codes, both as defined
+ *  by the Geometry; on the standard board, these are as on a Board.
+ *
+ *  I hold the position and the codes of the moves made since it was
+ *  set; subclasses add what their searches need.  A CellBoard must not
+ *  be used by more than one thread at a time.
+ *  @author Netra Sathe
+ */
+abstract class CellBoard {
+
+    /** A board with GEOMETRY, with every square empty.  Subclasses set
+     *  their initial position. */
+    CellBoard(Geometry geometry) {
+        _geometry = geometry;
+        _squares = geometry.squares();
+        _delta = geometry.deltas();
+        _cell = geometry.cellTable();
+        _square = geometry.squareTable();
+        _cells = new byte[geometry.cells()];
+        _amazons = new int[2][_squares];
+        _history = new int[_squares];
+        Arrays.fill(_cells, BORDER_CELL);
+        for (int cell : _cell) {
+            _cells[cell] = EMPTY_CELL;
+        }
+    }
+
+    /** Return my geometry. */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /** Set me to the initial position, with no moves made. */
+    void reset() {
+        Piece[] contents = new Piece[_squares];
+        Arrays.fill(contents, EMPTY);
+        for (int sq : _geometry.initialAmazons(WHITE)) {
+            contents[sq] = WHITE;
+        }
+        for (int sq : _geometry.initialAmazons(BLACK)) {
+            contents[sq] = BLACK;
+        }
+        set(contents, WHITE);
+    }
+
+    /** Set me to the position with CONTENTS[i] on the square with index
+     *  i and SIDE (WHITE or BLACK) to move, with no moves made. */
+    void set(Piece[] contents, Piece side) {
+        if (contents.length != _squares) {
+            throw Utils.error("wrong number of squares for board size");
+        }
+        clearAmazons();
+        for (int sq = 0; sq < _squares; sq += 1) {
+            place(sq, contents[sq]);
+        }
+        start(side);
+    }
+
+    /** Return the contents of the square with index SQ. */
+    Piece get(int sq) {
+        return PIECES[_cells[_cell[sq]]];
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn == WHITE_SIDE ? WHITE : BLACK;
+    }
+
+    /** Make the move with code MOVE, which must be legal. */
+    void makeMove(int move) {
+        int from = _cell[_geometry.from(move)],
+            to = _cell[_geometry.to(move)];
+        replace(_amazons[_turn], _numAmazons[_turn], from, to);
+        _cells[to] = _cells[from];
+        _cells[from] = EMPTY_CELL;
+        _cells[_cell[_geometry.spear(move)]] = SPEAR_CELL;
+        _turn ^= 1;
+        _history[_plies] = move;
+        _plies += 1;
+    }
+
+    /** Empty both sides' lists of amazons, before placing a position. */
+    protected void clearAmazons() {
+        _numAmazons[WHITE_SIDE] = _numAmazons[BLACK_SIDE] = 0;
+    }
+
+    /** Put P on the square with index SQ, adding it to its side's list
+     *  if it is an amazon. */
+    protected void place(int sq, Piece p) {
+        int cell = _cell[sq];
+        _cells[cell] = (byte) p.ordinal();
+        if (p == WHITE || p == BLACK) {
+            int s = side(p);
+            _amazons[s][_numAmazons[s]++] = cell;
+        }
+    }
+
+    /** Make SIDE (WHITE or BLACK) the side to move in the position just
+     *  placed, with no moves made. */
+    protected void start(Piece side) {
+        _turn = side(side);
+        _plies = 0;
+    }
+
+    /** Return the number of queen moves (ignoring spear throws)
+     *  available to the amazons of side S (WHITE_SIDE or BLACK_SIDE). */
+    protected int queenMoves(int s) {
+        byte[] cells = _cells;
+        int[] amazons = _amazons[s];
+        int total = 0;
+        for (int k = 0; k < _numAmazons[s]; k += 1) {
+            for (int d : _delta) {
+                for (int c = amazons[k] + d; cells[c] == EMPTY_CELL;
+                     c += d) {
+                    total += 1;
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Store in LIST the cells reachable by a queen move from cell FROM,
+     *  and return how many there are. */
+    protected int destinations(int from, int[] list) {
+        byte[] cells = _cells;
+        int n = 0;
+        for (int d : _delta) {
+            for (int c = from + d; cells[c] == EMPTY_CELL; c += d) {
+                list[n++] = c;
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff cell TO is reached by an unblocked queen move from
+     *  cell FROM. */
+    protected boolean reaches(int from, int to) {
+        for (int d : _delta) {
+            for (int c = from + d; _cells[c] == EMPTY_CELL; c += d) {
+                if (c == to) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Replace OLD by CELL among the first N entries of AMAZONS. */
+    protected static void replace(int[] amazons, int n, int old,
+                                  int cell) {
+        for (int k = 0; k < n; k += 1) {
+            if (amazons[k] == old) {
+                amazons[k] = cell;
+                return;
+            }
+        }
+    }
+
+    /** Return the index in per-side arrays of P (WHITE or BLACK). */
+    protected static int side(Piece p) {
+        return p == WHITE ? WHITE_SIDE : BLACK_SIDE;
+    }
+
+    /** Cell contents: the Piece ordinals, and BORDER_CELL. */
+    protected static final byte EMPTY_CELL = 0, WHITE_CELL = 1,
+        BLACK_CELL = 2, SPEAR_CELL = 3, BORDER_CELL = 4;
+    /** Pieces by cell contents (other than BORDER_CELL). */
+    protected static final Piece[] PIECES = Piece.values();
+    /** Indices of the two sides in per-side arrays. */
+    protected static final int WHITE_SIDE = 0, BLACK_SIDE = 1;
+
+    /** My geometry. */
+    protected final Geometry _geometry;
+    /** Number of squares. */
+    protected final int _squares;
+    /** Cell offsets of the eight directions (copied from _geometry, as
+     *  are _cell and _square, to keep lookups local). */
+    protected final int[] _delta;
+    /** Cell of each square, by index. */
+    protected final int[] _cell;
+    /** Square index of each cell, or -1 for the border. */
+    protected final int[] _square;
+    /** Contents of each cell; border cells are BORDER_CELL. */
+    protected final byte[] _cells;
+    /** Cells of each side's amazons, by side. */
+    protected final int[][] _amazons;
+    /** Number of amazons of each side. */
+    protected final int[] _numAmazons = new int[2];
+    /** Side to move (WHITE_SIDE or BLACK_SIDE). */
+    protected int _turn;
+    /** Codes of the moves made since the position was set (there can be
+     *  no more than there are squares, as each fills one). */
+    protected final int[] _history;
+    /** Number of moves in _history. */
+    protected int _plies;
+}
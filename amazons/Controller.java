@@ -65,6 +65,7 @@ final class Controller {
                 reportError("Error: %s%n", excp.getMessage());
             }
         }
+        stopPlayers();
         if (_logFile != null) {
             _logFile.close();
         }
@@ -104,6 +105,12 @@ final class Controller {
         }
     }
 
+    /** Stop the background thinking of both players. */
+    private void stopPlayers() {
+        _white.stop();
+        _black.stop();
+    }
+
     /** Report error by calling reportError(FORMAT, ARGS) on my reporter. */
     void reportError(String format, Object... args) {
         _reporter.reportError(format, args);
@@ -186,6 +193,7 @@ final class Controller {
 
     /** Command "new". */
     private void doNew(Matcher unused) {
+        stopPlayers();
         _board.init();
         _winner = null;
     }
@@ -214,8 +222,10 @@ final class Controller {
      */
     private void doAuto(Matcher mat) {
         if (mat.group(1).toLowerCase().equals("white")) {
+            this._white.stop();
             this._white = _autoPlayerTemplate.create(WHITE, this);
         } else if (mat.group(1).toLowerCase().equals("black")) {
+            this._black.stop();
             this._black = _autoPlayerTemplate.create(BLACK, this);
         } else {
             reportError("not a color side");
@@ -227,8 +237,10 @@ final class Controller {
      */
     private void doManual(Matcher mat) {
         if (mat.group(1).toLowerCase().equals("white")) {
+            this._white.stop();
             this._white = _manualPlayerTemplate.create(WHITE, this);
         } else if (mat.group(1).toLowerCase().equals("black")) {
+            this._black.stop();
             this._black = _manualPlayerTemplate.create(BLACK, this);
         } else {
             reportError("not a color side");
@@ -243,6 +255,7 @@ final class Controller {
             this._board.makeMove(Move.mv(mat.group(0)));
             if (this._board.winner() != null) {
                 _winner = this._board.winner();
+                stopPlayers();
                 reportNote(_winner.toName() + " wins.");
             }
         } else {
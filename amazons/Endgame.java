@@ -0,0 +1,329 @@
+package amazons;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static amazons.Piece.*;
+
+/** Endgame analysis by region decomposition.  Spears never move, so
+ *  once they wall the board into separate regions (maximal sets of
+ *  non-spear squares connected by king steps), play in one region never
+ *  affects another: amazons cannot leave their regions, and neither they
+ *  nor their spears can reach any other.  A region holding amazons of
+ *  only one color is that side's territory, and the only question about
+ *  it is how many moves its owner can make there before running out.
+ *  Only regions holding amazons of both colors are contested.
+ *
+ *  After analyze, an Endgame reports for each side bounds on the number
+ *  of moves it can make in its own territory, found by a depth-first
+ *  search of the ways of filling each region (exact unless a region is
+ *  too large to fill within a node budget, when the best filling found
+ *  is a lower bound and the region's empty squares an upper bound).
+ *  When no region is contested and the bounds decide the race, the game
+ *  is decided: the side to move wins iff it can make more moves than
+ *  its opponent.  In any position, the moves of amazons in territory
+ *  may be replaced by a single best filling move, since every other
+ *  move there fills less.
+ *
+ *  Fillings are cached by region contents across analyses, so an
+ *  Endgame is worth keeping for a whole search.  It is not thread-safe.
+ *  @author Netra Sathe
+ */
+final class Endgame {
+
+    /** Divide BOARD into regions and bound each side's territory.
+     *  BOARD is used as scratch space but is left unchanged. */
+    void analyze(Board board) {
+        for (int i = 0; i < SQUARES; i += 1) {
+            _label[i] = board.get(Square.sq(i)) == SPEAR ? WALL : NONE;
+        }
+        _numRegions = 0;
+        _contested = false;
+        for (Piece side : SIDES) {
+            _lower[side.ordinal()] = _upper[side.ordinal()] = 0;
+            _filling[side.ordinal()] = _fillingSize[side.ordinal()] = 0;
+        }
+        for (int i = 0; i < SQUARES; i += 1) {
+            if (_label[i] == NONE) {
+                label(board, i, _numRegions);
+                _numRegions += 1;
+            }
+        }
+    }
+
+    /** Return true iff no region holds amazons of both colors (as of the
+     *  last analyze). */
+    boolean partitioned() {
+        return !_contested;
+    }
+
+    /** Return a lower bound on the number of moves SIDE can make in its
+     *  territory. */
+    int lowerBound(Piece side) {
+        return _lower[side.ordinal()];
+    }
+
+    /** Return an upper bound on the number of moves SIDE can make in its
+     *  territory. */
+    int upperBound(Piece side) {
+        return _upper[side.ordinal()];
+    }
+
+    /** Return the winner of the position last analyzed, in which TURN
+     *  is to move, if the board is partitioned and the bounds on the two
+     *  sides' territories decide it, and otherwise null. */
+    Piece winner(Piece turn) {
+        if (_contested) {
+            return null;
+        }
+        Piece other = turn.opponent();
+        if (lowerBound(turn) > upperBound(other)) {
+            return turn;
+        } else if (upperBound(turn) <= lowerBound(other)) {
+            return other;
+        }
+        return null;
+    }
+
+    /** Return the code of a move for SIDE in its territory that leaves
+     *  the best filling found (in its largest region, as measured by
+     *  that filling), or 0 if it has none. */
+    int fillingMove(Piece side) {
+        return _filling[side.ordinal()];
+    }
+
+    /** Return true iff the square with index SQ lies in either side's
+     *  territory. */
+    boolean inTerritory(int sq) {
+        Piece owner = _owner[_label[sq]];
+        return owner == WHITE || owner == BLACK;
+    }
+
+    /** Remove from the first N of MOVES, which are moves for SIDE, those
+     *  played in SIDE's territory, add SIDE's filling move in their place
+     *  (if it has one), and return the resulting number of moves.  The
+     *  order of the remaining moves is preserved. */
+    int restrict(int[] moves, int n, Piece side) {
+        int filling = fillingMove(side);
+        int k = 0;
+        for (int i = 0; i < n; i += 1) {
+            int m = moves[i];
+            if (!inTerritory(Move.from(m)) || m == filling) {
+                moves[k++] = m;
+                if (m == filling) {
+                    filling = 0;
+                }
+            }
+        }
+        if (filling != 0) {
+            moves[k++] = filling;
+        }
+        return k;
+    }
+
+    /** Label with REGION all squares connected to square START on BOARD,
+     *  record the region's owner, and add its filling bounds to its
+     *  owner's totals. */
+    private void label(Board board, int start, int region) {
+        int head = 0, tail = 0;
+        int white = 0, black = 0, empty = 0;
+        long squaresLo = 0, squaresHi = 0, amazonsLo = 0, amazonsHi = 0;
+        _queue[tail++] = start;
+        _label[start] = region;
+        while (head < tail) {
+            int sq = _queue[head++];
+            Piece p = board.get(Square.sq(sq));
+            if (p == WHITE) {
+                white += 1;
+            } else if (p == BLACK) {
+                black += 1;
+            } else {
+                empty += 1;
+            }
+            if (sq < WORD) {
+                squaresLo |= 1L << sq;
+                amazonsLo |= p != EMPTY ? 1L << sq : 0;
+            } else {
+                squaresHi |= 1L << (sq - WORD);
+                amazonsHi |= p != EMPTY ? 1L << (sq - WORD) : 0;
+            }
+            for (int dir = 0; dir < BitBoard.DIRS; dir += 1) {
+                int next = Square.neighbor(sq, dir);
+                if (next >= 0 && _label[next] == NONE) {
+                    _label[next] = region;
+                    _queue[tail++] = next;
+                }
+            }
+        }
+
+        if (white > 0 && black > 0) {
+            _owner[region] = EMPTY;
+            _contested = true;
+            return;
+        }
+        Piece owner = white > 0 ? WHITE : black > 0 ? BLACK : SPEAR;
+        _owner[region] = owner;
+        if (owner == SPEAR) {
+            return;
+        }
+        long key = mix(squaresLo, squaresHi, amazonsLo, amazonsHi);
+        Long filling = _cache.get(key);
+        if (filling == null) {
+            filling = fill(board, owner, region, empty);
+            if (_cache.size() >= MAX_CACHE) {
+                _cache.clear();
+            }
+            _cache.put(key, filling);
+        }
+        int size = (int) (filling & SIZE_MASK);
+        boolean exact = (filling & EXACT) != 0;
+        int k = owner.ordinal();
+        _lower[k] += size;
+        _upper[k] += exact ? size : empty;
+        int move = (int) (filling >>> MOVE_SHIFT);
+        if (move != 0 && (_filling[k] == 0 || size > _fillingSize[k])) {
+            _filling[k] = move;
+            _fillingSize[k] = size;
+        }
+    }
+
+    /** Return the longest filling found of REGION, which has EMPTY empty
+     *  squares and holds only amazons of color SIDE, packed as its number
+     *  of moves, the EXACT flag if the search was complete, and the code
+     *  of its first move shifted by MOVE_SHIFT. */
+    private long fill(Board board, Piece side, int region, int empty) {
+        _budget = NODE_BUDGET;
+        _exhausted = false;
+        _bestFirst = 0;
+        _memo.clear();
+        int size = fill(board, side, region, empty, 0);
+        return size | (_exhausted ? 0 : EXACT)
+            | (long) _bestFirst << MOVE_SHIFT;
+    }
+
+    /** Return the largest number of moves SIDE can be found to make in
+     *  REGION, which has EMPTY empty squares, starting from the position
+     *  on BOARD, which is DEPTH moves into the filling.  At depth 0,
+     *  records the first move of the best filling in _bestFirst. */
+    private int fill(Board board, Piece side, int region, int empty,
+                     int depth) {
+        if (_budget <= 0) {
+            _exhausted = true;
+            return 0;
+        }
+        _budget -= 1;
+        long key = board.hash();
+        Integer known = _memo.get(key);
+        if (known != null) {
+            return known;
+        }
+        int[] moves = buffer(depth);
+        int[] amazons = _amazons[depth];
+        int numAmazons = board.amazons(side, amazons);
+        int best = 0;
+        for (int a = 0; a < numAmazons && best < empty && !_exhausted;
+             a += 1) {
+            if (_label[amazons[a]] != region) {
+                continue;
+            }
+            int n = board.pieceMoves(amazons[a], moves);
+            for (int i = 0; i < n && best < empty && !_exhausted; i += 1) {
+                int m = moves[i];
+                board.makeMove(m);
+                int size =
+                    1 + fill(board, side, region, empty - 1, depth + 1);
+                board.undo();
+                if (size > best) {
+                    best = size;
+                    if (depth == 0) {
+                        _bestFirst = m;
+                    }
+                }
+            }
+        }
+        if (!_exhausted) {
+            _memo.put(key, best);
+        }
+        return best;
+    }
+
+    /** Return the move buffer for filling depth DEPTH, creating it on
+     *  first use. */
+    private int[] buffer(int depth) {
+        if (_buffers[depth] == null) {
+            _buffers[depth] = new int[Board.MAX_MOVES];
+        }
+        return _buffers[depth];
+    }
+
+    /** Return a hash of the region with squares SQLO and SQHI holding
+     *  amazons at AMLO and AMHI. */
+    private static long mix(long sqLo, long sqHi, long amLo, long amHi) {
+        long h = sqLo * MIX;
+        h = (h ^ (h >>> SPREAD) ^ sqHi) * MIX;
+        h = (h ^ (h >>> SPREAD) ^ amLo) * MIX;
+        h = (h ^ (h >>> SPREAD) ^ amHi) * MIX;
+        return h ^ (h >>> SPREAD);
+    }
+
+    /** Number of squares. */
+    private static final int SQUARES = Board.SIZE * Board.SIZE;
+    /** Number of bits in a word. */
+    private static final int WORD = 64;
+    /** Label of a spear. */
+    private static final int WALL = SQUARES;
+    /** Label of a square not yet labeled. */
+    private static final int NONE = -1;
+    /** The two sides. */
+    private static final Piece[] SIDES = { WHITE, BLACK };
+    /** Largest number of positions searched to fill one region. */
+    private static final int NODE_BUDGET = 2000;
+    /** Largest number of cached fillings. */
+    private static final int MAX_CACHE = 1 << 16;
+    /** Mask of the size field of a packed filling. */
+    private static final long SIZE_MASK = 0xff;
+    /** Flag of a packed filling that is known to be the longest. */
+    private static final long EXACT = 0x100;
+    /** Position of the move field of a packed filling. */
+    private static final int MOVE_SHIFT = 9;
+    /** Multiplier for mix. */
+    private static final long MIX = 0x9e3779b97f4a7c15L;
+    /** Shift for mix. */
+    private static final int SPREAD = 29;
+
+    /** Region of each square, or WALL for spears. */
+    private final int[] _label = new int[SQUARES];
+    /** Owner of each region: WHITE or BLACK for territory, EMPTY if
+     *  contested, and SPEAR if it holds no amazons.  The extra entry
+     *  is the "owner" of WALL. */
+    private final Piece[] _owner = new Piece[SQUARES + 1];
+    /** Queue of squares for labeling. */
+    private final int[] _queue = new int[SQUARES];
+    /** Number of regions found. */
+    private int _numRegions;
+    /** True iff some region is contested. */
+    private boolean _contested;
+    /** Bounds on each side's territory, indexed by ordinal. */
+    private final int[] _lower = new int[SIDES.length + 1],
+        _upper = new int[SIDES.length + 1];
+    /** Each side's filling move, and the size of the filling it
+     *  begins. */
+    private final int[] _filling = new int[SIDES.length + 1],
+        _fillingSize = new int[SIDES.length + 1];
+
+    /** Cached packed fillings, by region hash. */
+    private final Map<Long, Long> _cache = new HashMap<>();
+    /** Lengths of fillings found from positions during one fill. */
+    private final Map<Long, Integer> _memo = new HashMap<>();
+    /** Move buffers for filling, by depth. */
+    private final int[][] _buffers = new int[SQUARES][];
+    /** Buffers for the squares of the filling side's amazons, by
+     *  depth. */
+    private final int[][] _amazons = new int[SQUARES][SQUARES];
+    /** Positions left to search in the current fill. */
+    private int _budget;
+    /** True iff the current fill ran out of budget. */
+    private boolean _exhausted;
+    /** First move of the best filling found by the current fill. */
+    private int _bestFirst;
+}
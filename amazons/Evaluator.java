@@ -0,0 +1,19 @@
+package amazons;
+
+/** A static evaluation function for positions that are not yet won.
+ *  Evaluators may keep scratch space, so a single instance must not be
+ *  used by more than one thread at a time; each search thread gets its
+ *  own through newInstance.
+ *  @author Netra Sathe
+ */
+interface Evaluator {
+
+    /** Return an estimate of the value of BOARD, which has no winner,
+     *  positive when WHITE stands better and negative when BLACK does.
+     *  The magnitude must be far smaller than Integer.MAX_VALUE. */
+    int score(Board board);
+
+    /** Return a new Evaluator of my kind with its own scratch space. */
+    Evaluator newInstance();
+
+}
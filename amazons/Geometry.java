@@ -0,0 +1,258 @@
+package amazons;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static amazons.Utils.error;
+
+/** The precomputed tables for one size of board, for the engines that
+ *  work on a board of any size (see Playout).  A board of size N has N
+ *  columns (a, b, ...) and N rows (1, 2, ...); the square in column c
+ *  and row r (from 0) has index r * N + c, as on a Board.  The engines
+ *  store a board as a flat array of cells with a one-cell border, so a
+ *  geometry maps square indices to cells and back, and gives the cell
+ *  offset of each direction.
+ *
+ *  Moves are packed into ints as by Move.code, with as many bits per
+ *  square as the size needs (at least 7), so that on the standard board
+ *  the codes are those of Move.  Each side starts with four amazons,
+ *  placed as on the standard board: one third of the way in along the
+ *  edges nearest it.
+ *
+ *  A geometry also holds the Zobrist keys of its size's positions (see
+ *  SizedBoard), seeded by the size so that hashes are stable from run
+ *  to run.  There is one Geometry per size, shared by all threads.
+ *  @author Netra Sathe
+ */
+final class Geometry {
+
+    /** Smallest size supported. */
+    static final int MIN_SIZE = 4;
+    /** Largest size supported (so that columns are letters). */
+    static final int MAX_SIZE = 26;
+
+    /** Return the geometry of boards of size SIZE. */
+    static Geometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw error("board size must be between %d and %d", MIN_SIZE,
+                        MAX_SIZE);
+        }
+        Geometry result = GEOMETRIES.get(size);
+        if (result == null) {
+            GEOMETRIES.compareAndSet(size, null, new Geometry(size));
+            result = GEOMETRIES.get(size);
+        }
+        return result;
+    }
+
+    /** The geometry of boards of size SIZE. */
+    private Geometry(int size) {
+        _size = size;
+        _squares = size * size;
+        _width = size + 2;
+        int bits = Move.CODE_BITS;
+        while (1 << bits < _squares) {
+            bits += 1;
+        }
+        _codeBits = bits;
+        _delta = new int[] {
+            1, _width + 1, _width, _width - 1,
+            -1, -_width - 1, -_width, -_width + 1
+        };
+        _cell = new int[_squares];
+        _square = new int[_width * _width];
+        Arrays.fill(_square, -1);
+        for (int sq = 0; sq < _squares; sq += 1) {
+            int cell = (sq / size + 1) * _width + sq % size + 1;
+            _cell[sq] = cell;
+            _square[cell] = sq;
+        }
+        int k = (size - 1) / 3, last = size - 1;
+        _white = new int[] {
+            index(k, 0), index(last - k, 0), index(0, k), index(last, k)
+        };
+        _black = new int[] {
+            index(k, last), index(last - k, last), index(0, last - k),
+            index(last, last - k)
+        };
+        Random rand = new Random(ZOBRIST_SEED + size);
+        _zobrist = new long[Piece.values().length][_squares];
+        for (Piece p : Piece.values()) {
+            if (p != Piece.EMPTY) {
+                for (int sq = 0; sq < _squares; sq += 1) {
+                    _zobrist[p.ordinal()][sq] = rand.nextLong();
+                }
+            }
+        }
+        _zobristBlack = rand.nextLong();
+    }
+
+    /** Return the number of rows (and of columns). */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of squares. */
+    int squares() {
+        return _squares;
+    }
+
+    /** Return the number of cells of the bordered board. */
+    int cells() {
+        return _width * _width;
+    }
+
+    /** Return the cell of the square with index SQ. */
+    int cell(int sq) {
+        return _cell[sq];
+    }
+
+    /** Return the index of the square at CELL, or -1 if it is in the
+     *  border. */
+    int square(int cell) {
+        return _square[cell];
+    }
+
+    /** Return a new array of the cell offsets of the eight directions,
+     *  in the order of BitBoard.DELTA. */
+    int[] deltas() {
+        return _delta.clone();
+    }
+
+    /** Return a new array of the cells of the squares, by index. */
+    int[] cellTable() {
+        return _cell.clone();
+    }
+
+    /** Return a new array of the square indices of the cells (-1 for the
+     *  border). */
+    int[] squareTable() {
+        return _square.clone();
+    }
+
+    /** Return the largest number of squares reachable from a square by a
+     *  queen move. */
+    int maxReach() {
+        return 4 * (_size - 1);
+    }
+
+    /** Return the index of the square in column COL and row ROW. */
+    int index(int col, int row) {
+        return row * _size + col;
+    }
+
+    /** Return the indices of the initial squares of the amazons of SIDE
+     *  (WHITE or BLACK). */
+    int[] initialAmazons(Piece side) {
+        return (side == Piece.WHITE ? _white : _black).clone();
+    }
+
+    /** Return the code of the move from the square with index FROM to
+     *  the square with index TO, throwing a spear to index SPEAR. */
+    int code(int from, int to, int spear) {
+        return from | to << _codeBits | spear << 2 * _codeBits;
+    }
+
+    /** Return the index of the square moved from in the move with code
+     *  CODE. */
+    int from(int code) {
+        return code & (1 << _codeBits) - 1;
+    }
+
+    /** Return the index of the square moved to in the move with code
+     *  CODE. */
+    int to(int code) {
+        return code >> _codeBits & (1 << _codeBits) - 1;
+    }
+
+    /** Return the index of the spear's destination in the move with code
+     *  CODE. */
+    int spear(int code) {
+        return code >> 2 * _codeBits & (1 << _codeBits) - 1;
+    }
+
+    /** Return the hash contribution of P on the square with index SQ (0
+     *  for EMPTY). */
+    long zobrist(Piece p, int sq) {
+        return _zobrist[p.ordinal()][sq];
+    }
+
+    /** Return the hash contribution of black being on move. */
+    long zobristBlackToMove() {
+        return _zobristBlack;
+    }
+
+    /** Return the name of the square with index SQ, such as a1. */
+    String squareName(int sq) {
+        return String.format("%c%d", (char) ('a' + sq % _size),
+                             sq / _size + 1);
+    }
+
+    /** Return the move with code CODE in the form FROM-TO(SPEAR). */
+    String moveName(int code) {
+        return String.format("%s-%s(%s)", squareName(from(code)),
+                             squareName(to(code)), squareName(spear(code)));
+    }
+
+    /** Return the code of the move named STR, in the form
+     *  FROM-TO(SPEAR), or 0 if STR does not name a move between squares
+     *  of this size.  The move need not be a legal one. */
+    int moveCode(String str) {
+        Matcher mat = MOVE_PATTERN.matcher(str.trim());
+        if (!mat.matches()) {
+            return 0;
+        }
+        int from = squareIndex(mat.group(1)), to = squareIndex(mat.group(2)),
+            spear = squareIndex(mat.group(3));
+        if (from < 0 || to < 0 || spear < 0 || from == to) {
+            return 0;
+        }
+        return code(from, to, spear);
+    }
+
+    /** Return the index of the square named STR, such as a1, or -1 if
+     *  there is no such square of this size. */
+    private int squareIndex(String str) {
+        int col = str.charAt(0) - 'a';
+        int row = Integer.parseInt(str.substring(1)) - 1;
+        if (col >= _size || row < 0 || row >= _size) {
+            return -1;
+        }
+        return index(col, row);
+    }
+
+    /** Pattern matching a move name FROM-TO(SPEAR). */
+    private static final Pattern MOVE_PATTERN =
+        Pattern.compile("([a-z]\\d+)-([a-z]\\d+)\\(([a-z]\\d+)\\)");
+    /** Seed of the Zobrist keys, to which the size is added. */
+    private static final long ZOBRIST_SEED = 0x5eed_a3a2_0e6L;
+
+    /** Geometries by size, created on first use. */
+    private static final AtomicReferenceArray<Geometry> GEOMETRIES =
+        new AtomicReferenceArray<>(MAX_SIZE + 1);
+
+    /** Number of rows and columns. */
+    private final int _size;
+    /** Number of squares. */
+    private final int _squares;
+    /** Width of the bordered board. */
+    private final int _width;
+    /** Bits per square in a move code. */
+    private final int _codeBits;
+    /** Cell offsets of the eight directions. */
+    private final int[] _delta;
+    /** Cell of each square, by index. */
+    private final int[] _cell;
+    /** Square index of each cell, or -1 for the border. */
+    private final int[] _square;
+    /** Initial squares of the white and of the black amazons. */
+    private final int[] _white, _black;
+    /** _zobrist[p.ordinal()][sq] is the hash contribution of Piece p on
+     *  the square with index sq. */
+    private final long[][] _zobrist;
+    /** Hash contribution of black being on move. */
+    private final long _zobristBlack;
+}
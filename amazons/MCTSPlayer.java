@@ -0,0 +1,496 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static amazons.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo tree search: UCT (the
+ *  UCB1 bandit rule applied at each node of a tree grown one node per
+ *  iteration), scoring each new node by a short random playout (on a
+ *  Playout board) whose final position is judged by an Evaluator.
+ *
+ *  Amazons has thousands of moves per position, far too many to try
+ *  each once, so nodes widen progressively: a node may have only about
+ *  WIDENING times the square root of its visits as children, and each
+ *  new child is a legal move not yet tried, chosen at random.
+ *
+ *  Several threads may grow one tree at once, each on its own copy of
+ *  the board.  A thread passing through a node adds a virtual loss to
+ *  it, so that the others are steered elsewhere until its playout is
+ *  counted.  After a move, the subtree under the move chosen is kept,
+ *  and is used again if the opponent's reply was one it explored.
+ *  @author Netra Sathe
+ */
+class MCTSPlayer extends Player {
+
+    /** Default number of iterations per move. */
+    static final int DEFAULT_ITERATIONS = 20000;
+
+    /** A new MCTSPlayer with no piece or controller (intended to produce
+     *  a template). */
+    MCTSPlayer() {
+        this(null, null);
+    }
+
+    /** A new MCTSPlayer playing PIECE under control of CONTROLLER. */
+    MCTSPlayer(Piece piece, Controller controller) {
+        super(piece, controller);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        MCTSPlayer result = new MCTSPlayer(piece, controller);
+        result.setBudget(_iterations, _moveMillis);
+        result._threads = _threads;
+        result._playoutPlies = _playoutPlies;
+        result._evaluator = _evaluator;
+        result.setSeed(_seed);
+        return result;
+    }
+
+    /** Stop searching a move after ITERATIONS iterations (no limit if
+     *  0) or MOVEMILLIS milliseconds (no limit if 0), whichever comes
+     *  first.  With neither limit, I use DEFAULT_ITERATIONS. */
+    void setBudget(int iterations, long moveMillis) {
+        _iterations = iterations;
+        _moveMillis = moveMillis;
+    }
+
+    /** Search with THREADS threads (at least 1), all growing the same
+     *  tree.  With one thread and no time limit, my moves depend only
+     *  on my seed. */
+    void setThreads(int threads) {
+        threads = Math.max(1, threads);
+        if (threads != _threads) {
+            releaseHelpers();
+        }
+        _threads = threads;
+    }
+
+    /** End each playout after PLIES random moves (or sooner, if the game
+     *  ends), judging the winner by static evaluation. */
+    void setPlayoutPlies(int plies) {
+        _playoutPlies = plies;
+    }
+
+    /** Judge the ends of playouts with (new instances of) EVALUATOR. */
+    void setEvaluator(Evaluator evaluator) {
+        _evaluator = evaluator;
+    }
+
+    /** Make my random choices using SEED. */
+    void setSeed(long seed) {
+        _seed = seed;
+        _random = new Random(seed);
+    }
+
+    @Override
+    void stop() {
+        releaseHelpers();
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove(board());
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    /** Return a move for the side to move in BOARD, which must have one:
+     *  the most visited child of the root after my search.  BOARD is not
+     *  modified. */
+    Move findMove(Board board) {
+        long deadline = _moveMillis > 0
+            ? System.currentTimeMillis() + _moveMillis : Long.MAX_VALUE;
+        int limit = _iterations > 0 ? _iterations
+            : _moveMillis > 0 ? Integer.MAX_VALUE : DEFAULT_ITERATIONS;
+        Node root = reusedRoot(board);
+        if (root == null) {
+            root = new Node(0, board.turn().opponent(), board.hash());
+        }
+        _budget.set(limit);
+        _lastIterations.set(0);
+        _nodes.set(0);
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < _threads; i += 1) {
+            Worker helper = new Worker(root, board, deadline,
+                                       _random.nextLong());
+            helpers.add(helperPool().submit(helper));
+        }
+        new Worker(root, board, deadline, _random.nextLong()).run();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            }
+        }
+
+        Node best = root.mostVisited();
+        _root = best;
+        return Move.mv(best._move);
+    }
+
+    /** Return the number of iterations in my most recent search. */
+    int iterations() {
+        return _lastIterations.get();
+    }
+
+    /** Return the number of visits recorded in the tree for the position
+     *  reached from the root of my most recent search by the move I
+     *  chose. */
+    int visits() {
+        return _root == null ? 0 : _root._visits;
+    }
+
+    /** Return the node of my kept subtree whose position is that on
+     *  BOARD (the root of the subtree, or one of its children), or null
+     *  if there is none. */
+    private Node reusedRoot(Board board) {
+        Node kept = _root;
+        _root = null;
+        if (kept == null) {
+            return null;
+        } else if (kept._hash == board.hash()) {
+            return kept;
+        }
+        for (int i = 0; i < kept._numChildren; i += 1) {
+            if (kept._children[i]._hash == board.hash()) {
+                return kept._children[i];
+            }
+        }
+        return null;
+    }
+
+    /** Return the pool that runs my helper threads, creating it on first
+     *  use.  Its threads are daemons, so they never keep the program
+     *  alive. */
+    private ExecutorService helperPool() {
+        if (_helperPool == null) {
+            _helperPool = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread thread = new Thread(r, "amazons-mcts-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _helperPool;
+    }
+
+    /** Shut down my helper pool, if any, so that its threads end; the
+     *  next search with helpers creates a new one. */
+    private void releaseHelpers() {
+        if (_helperPool != null) {
+            _helperPool.shutdown();
+            _helperPool = null;
+        }
+    }
+
+    /** One thread's share of a search: iterations from the root, on a
+     *  private copy of the board. */
+    private class Worker implements Runnable {
+
+        /** A worker growing the tree at ROOT, whose position is that on
+         *  BOARD, until the budget is spent or time DEADLINE, making its
+         *  random choices with a generator seeded with SEED. */
+        Worker(Node root, Board board, long deadline, long seed) {
+            _root = root;
+            _board = new Board(board);
+            _deadline = deadline;
+            _random = new Random(seed);
+            _playout = new Playout(seed);
+            _eval = _evaluator.newInstance();
+        }
+
+        @Override
+        public void run() {
+            while (_budget.getAndDecrement() > 0
+                   && (System.currentTimeMillis() < _deadline
+                       || _root._numChildren == 0)) {
+                iterate();
+                _lastIterations.incrementAndGet();
+            }
+        }
+
+        /** Descend from the root to a new node or a finished game,
+         *  play out the game from there, and record the result in every
+         *  node passed through. */
+        private void iterate() {
+            int start = _board.numMoves();
+            int depth = 0;
+            Node node = _root;
+            synchronized (node) {
+                node._visits += VIRTUAL_LOSS;
+            }
+            _path[depth++] = node;
+            Piece winner = null;
+            while (winner == null) {
+                Node child = select(node);
+                if (child == null) {
+                    winner = _board.turn().opponent();
+                    break;
+                }
+                _path[depth++] = child;
+                if (_created) {
+                    winner = playout();
+                }
+                node = child;
+            }
+            while (_board.numMoves() > start) {
+                _board.undo();
+            }
+            for (int i = 0; i < depth; i += 1) {
+                Node n = _path[i];
+                synchronized (n) {
+                    n._visits += 1 - VIRTUAL_LOSS;
+                    if (n._mover == winner) {
+                        n._wins += 1;
+                    }
+                }
+            }
+        }
+
+        /** Return the child of NODE, whose position is that on my board,
+         *  through which to descend: a new child, if NODE may widen, and
+         *  otherwise the existing child with the greatest upper
+         *  confidence bound.  Makes the child's move on my board, adds a
+         *  virtual loss to the child, and sets _created iff it is new.
+         *  Returns null if the side to move at NODE has no moves. */
+        private Node select(Node node) {
+            int count = 0;
+            if (node.canWiden()) {
+                count = _board.legalMoves(_moves);
+            }
+            synchronized (node) {
+                if (node._numMoves < 0 && count == 0) {
+                    count = _board.legalMoves(_moves);
+                }
+                if (node._numMoves < 0) {
+                    node._numMoves = count;
+                }
+                if (node._numMoves == 0) {
+                    return null;
+                }
+                Node child;
+                _created = count > 0 && node.canWiden()
+                    && (_nodes.get() < MAX_NODES || node._numChildren == 0);
+                if (_created) {
+                    int move = untried(node, count);
+                    Piece mover = _board.turn();
+                    _board.makeMove(move);
+                    child = node.addChild(move, mover, _board.hash());
+                    _nodes.incrementAndGet();
+                } else {
+                    child = node.bestChild();
+                    _board.makeMove(child._move);
+                }
+                child._visits += VIRTUAL_LOSS;
+                return child;
+            }
+        }
+
+        /** Return a move among the first COUNT of my move buffer that is
+         *  not yet a child of NODE, which must have one. */
+        private int untried(Node node, int count) {
+            for (int k = 0; k < RANDOM_TRIES; k += 1) {
+                int move = _moves[_random.nextInt(count)];
+                if (!node.hasChild(move)) {
+                    return move;
+                }
+            }
+            int first = _random.nextInt(count);
+            for (int k = 0; k < count; k += 1) {
+                int move = _moves[(first + k) % count];
+                if (!node.hasChild(move)) {
+                    return move;
+                }
+            }
+            throw new IllegalStateException("no untried move");
+        }
+
+        /** Play random moves from the position on my board until the
+         *  game ends or _playoutPlies moves have been made, and return
+         *  the winner (judged by my evaluator if the game has not
+         *  ended).  The moves are sampled on my playout board; if the
+         *  evaluator is needed, they are then made on my board too, and
+         *  left there. */
+        private Piece playout() {
+            _playout.load(_board);
+            Piece winner = _playout.play(_playoutPlies);
+            if (winner != null) {
+                return winner;
+            }
+            for (int k = 0; k < _playout.plies(); k += 1) {
+                _board.makeMove(_playout.move(k));
+            }
+            int score = _eval.score(_board);
+            return score > 0 ? WHITE : score < 0 ? BLACK
+                : _board.turn().opponent();
+        }
+
+        /** The root of the tree. */
+        private final Node _root;
+        /** My copy of the board, at the root's position between
+         *  iterations. */
+        private final Board _board;
+        /** Time (as from System.currentTimeMillis) at which to stop. */
+        private final long _deadline;
+        /** Source of my random choices. */
+        private final Random _random;
+        /** Board for my playouts. */
+        private final Playout _playout;
+        /** My evaluator. */
+        private final Evaluator _eval;
+        /** Move buffer. */
+        private final int[] _moves = new int[Board.MAX_MOVES];
+        /** The nodes passed through by the current iteration. */
+        private final Node[] _path = new Node[MAX_PATH];
+        /** True iff the last node selected was new. */
+        private boolean _created;
+    }
+
+    /** A node of the search tree: a position, reached by a move.  The
+     *  mutable fields are guarded by the node's lock. */
+    private static final class Node {
+
+        /** A node reached by the move with code MOVE (0 at the root),
+         *  made by MOVER, whose position has Zobrist hash HASH. */
+        Node(int move, Piece mover, long hash) {
+            _move = move;
+            _mover = mover;
+            _hash = hash;
+        }
+
+        /** Return true iff I may get another child: my moves are not yet
+         *  known, or not all tried and my visits allow more children. */
+        boolean canWiden() {
+            return _numMoves < 0
+                || _numChildren < _numMoves
+                && _numChildren < 1 + WIDENING * Math.sqrt(_visits);
+        }
+
+        /** Return true iff I have a child reached by the move with code
+         *  MOVE. */
+        boolean hasChild(int move) {
+            for (int i = 0; i < _numChildren; i += 1) {
+                if (_children[i]._move == move) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Add and return a new child reached by the move with code
+         *  MOVE, made by MOVER, whose position has Zobrist hash HASH. */
+        Node addChild(int move, Piece mover, long hash) {
+            if (_numChildren == _children.length) {
+                _children = Arrays.copyOf(
+                    _children, Math.max(2, 2 * _numChildren));
+            }
+            Node child = new Node(move, mover, hash);
+            _children[_numChildren++] = child;
+            return child;
+        }
+
+        /** Return my child with the greatest upper confidence bound on
+         *  its win rate for its mover. */
+        Node bestChild() {
+            double logVisits = Math.log(Math.max(1, _visits));
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < _numChildren; i += 1) {
+                Node child = _children[i];
+                int visits = Math.max(1, child._visits);
+                double value = (double) child._wins / visits
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (value > bestValue) {
+                    best = child;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /** Return my most visited child. */
+        Node mostVisited() {
+            Node best = _children[0];
+            for (int i = 1; i < _numChildren; i += 1) {
+                if (_children[i]._visits > best._visits) {
+                    best = _children[i];
+                }
+            }
+            return best;
+        }
+
+        /** Code of the move reaching me (0 at the root). */
+        private final int _move;
+        /** Side that made _move. */
+        private final Piece _mover;
+        /** Zobrist hash of my position. */
+        private final long _hash;
+        /** Number of legal moves from my position, or -1 if not yet
+         *  known. */
+        private int _numMoves = -1;
+        /** My children, in order of creation, and their number. */
+        private Node[] _children = new Node[0];
+        /** Number of my children. */
+        private int _numChildren;
+        /** Playouts through me, plus virtual losses in progress. */
+        private int _visits;
+        /** Playouts through me won by _mover. */
+        private int _wins;
+    }
+
+    /** Visits added to a node while a thread's playout through it is in
+     *  progress (with no wins, so that it looks worse meanwhile). */
+    private static final int VIRTUAL_LOSS = 1;
+    /** Coefficient of the exploration term of the UCB1 rule. */
+    private static final double EXPLORATION = 0.7;
+    /** Scale of the number of children allowed a node. */
+    private static final double WIDENING = 2.0;
+    /** Default number of random moves per playout. */
+    private static final int PLAYOUT_PLIES = 4;
+    /** Largest number of nodes added to the tree per search. */
+    private static final int MAX_NODES = 1 << 20;
+    /** More than the number of nodes on any path through the tree
+     *  (games last at most 92 moves). */
+    private static final int MAX_PATH = 128;
+    /** Number of random picks to try before scanning for an untried
+     *  move. */
+    private static final int RANDOM_TRIES = 8;
+
+    /** Iterations per move (0 if unlimited). */
+    private int _iterations;
+    /** Milliseconds per move (0 if unlimited). */
+    private long _moveMillis;
+    /** Number of search threads. */
+    private int _threads = 1;
+    /** Random moves per playout. */
+    private int _playoutPlies = PLAYOUT_PLIES;
+    /** Template for my threads' evaluators. */
+    private Evaluator _evaluator = new TerritoryEvaluator();
+    /** Seed of my random choices. */
+    private long _seed;
+    /** Source of the seeds of my threads' random choices. */
+    private Random _random = new Random(0);
+
+    /** Node reached by my last move, kept for reuse, or null. */
+    private Node _root;
+    /** Iterations not yet started in the current search. */
+    private final AtomicInteger _budget = new AtomicInteger();
+    /** Iterations completed in the current or most recent search. */
+    private final AtomicInteger _lastIterations = new AtomicInteger();
+    /** Nodes added in the current search. */
+    private final AtomicInteger _nodes = new AtomicInteger();
+    /** Threads that run my helper workers, or null if not needed
+     *  since I was created or last released them. */
+    private ExecutorService _helperPool;
+}
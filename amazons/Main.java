@@ -19,10 +19,20 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
+            new CommandArgs("--display --log={0,1} --hash=(\\d+){0,1}"
+                            + " --time=(\\d+){0,1} --clock=(\\d+){0,1}"
+                            + " --increment=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1} --book={0,1} --split"
+                            + " --stats={0,1} --jmx --ponder --mcts"
+                            + " --iterations=(\\d+){0,1} --={0,2}", args);
         if (!options.ok()) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--hash=MB] [--time=MS]"
+                               + " [--clock=MS [--increment=MS]]"
+                               + " [--threads=N] [--book=FILE] [--split]"
+                               + " [--stats=FILE] [--jmx] [--ponder]"
+                               + " [--mcts [--iterations=N]]"
+                               + " [INPUT [OUTPUT]]");
             System.exit(1);
         }
 
@@ -83,6 +93,78 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        return new Controller(view, log, reporter, manualPlayer,
+                              getAutoPlayer(options));
+    }
+
+    /** Return the template for automated players indicated by OPTIONS. */
+    private static Player getAutoPlayer(CommandArgs options) {
+        if (options.contains("--mcts")) {
+            return getMCTSPlayer(options);
+        }
+        AI autoPlayer;
+        if (options.contains("--hash")) {
+            autoPlayer = new AI(Integer.parseInt(options.getFirst("--hash")));
+        } else {
+            autoPlayer = new AI();
+        }
+        autoPlayer.setTimeControl(getMillis(options, "--time"),
+                                  getMillis(options, "--clock"),
+                                  getMillis(options, "--increment"));
+        if (options.contains("--threads")) {
+            autoPlayer.setThreads(
+                Integer.parseInt(options.getFirst("--threads")));
+        }
+        autoPlayer.setSplitMoves(options.contains("--split"));
+        autoPlayer.setPonder(options.contains("--ponder"));
+        if (options.contains("--book")) {
+            try {
+                autoPlayer.setBook(
+                    new OpeningBook(options.getFirst("--book")));
+            } catch (IOException excp) {
+                throw error("Could not open opening book: %s",
+                            excp.getMessage());
+            }
+        }
+        if (options.contains("--stats")) {
+            try {
+                FileOutputStream out =
+                    new FileOutputStream(options.getFirst("--stats"));
+                autoPlayer.setStatsLog(new PrintStream(out, true));
+            } catch (IOException excp) {
+                throw error("Could not open statistics file");
+            }
+        }
+        if (options.contains("--jmx")) {
+            SearchMonitor monitor = new SearchMonitor();
+            monitor.register();
+            autoPlayer.setMonitor(monitor);
+        }
+        return autoPlayer;
+    }
+
+    /** Return the template for Monte Carlo players indicated by
+     *  OPTIONS. */
+    private static MCTSPlayer getMCTSPlayer(CommandArgs options) {
+        MCTSPlayer autoPlayer = new MCTSPlayer();
+        int iterations = 0;
+        if (options.contains("--iterations")) {
+            iterations = Integer.parseInt(options.getFirst("--iterations"));
+        }
+        autoPlayer.setBudget(iterations, getMillis(options, "--time"));
+        if (options.contains("--threads")) {
+            autoPlayer.setThreads(
+                Integer.parseInt(options.getFirst("--threads")));
+        }
+        return autoPlayer;
+    }
+
+    /** Return the value of the milliseconds option KEY in OPTIONS, or 0
+     *  if it is absent. */
+    private static long getMillis(CommandArgs options, String key) {
+        if (options.contains(key)) {
+            return Long.parseLong(options.getFirst(key));
+        }
+        return 0;
     }
 }
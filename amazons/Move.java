@@ -1,15 +1,21 @@
 package amazons;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
 import static amazons.Square.sq;
 import static amazons.Square.SQ;
+import static amazons.Utils.error;
 
 /** A move in the game of Amazons. As for Squares, Moves are immutable
  *  and unique: there is only one move object for each possible move
  *  (generated by the factory method  mv, the constructor being private).
  *  As for Squares, you can freely use == to compare Moves.
+ *
+ *  The search works with moves packed into ints instead (see code()),
+ *  converting to Move objects only at its boundaries.  The factory
+ *  methods are thread-safe, so many engines can share one JVM.
  *  @author P. N. Hilfinger
  */
 final class Move {
@@ -37,25 +43,72 @@ final class Move {
         return _spear;
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return my packed integer code: the indices of from(), to() and
+     *  spear() in bits 0-6, 7-13 and 14-20 respectively.  No Move has
+     *  code 0. */
+    int code() {
+        return _code;
+    }
+
+    /** Return the code of the move from the square with index FROM to the
+     *  square with index TO, throwing a spear to index SPEAR. */
+    static int code(int from, int to, int spear) {
+        return from | to << CODE_BITS | spear << 2 * CODE_BITS;
+    }
+
+    /** Return the index of the square moved from in the move with code
+     *  CODE. */
+    static int from(int code) {
+        return code & CODE_MASK;
+    }
+
+    /** Return the index of the square moved to in the move with code
+     *  CODE. */
+    static int to(int code) {
+        return code >> CODE_BITS & CODE_MASK;
+    }
+
+    /** Return the index of the spear's destination in the move with code
+     *  CODE. */
+    static int spear(int code) {
+        return code >> 2 * CODE_BITS & CODE_MASK;
+    }
+
+    /** Return the unique Move whose code() is CODE. */
+    static Move mv(int code) {
+        return mv(Square.sq(from(code)), Square.sq(to(code)),
+                  Square.sq(spear(code)));
+    }
+
+    /** Return the unique Move FROM-TO(SPEAR).  FROM-TO and TO-SPEAR must
+     *  be queen moves.  Moves are created on first request; concurrent
+     *  first requests agree on a single winner without locking. */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                    new Move(from, to, spear);
+        int toSlot = SLOT[from.index()][to.index()],
+            spearSlot = SLOT[to.index()][spear.index()];
+        if (toSlot < 0 || spearSlot < 0) {
+            throw error("not a queen move: %s-%s(%s)", from, to, spear);
+        }
+        int k = (from.index() * MAX_TARGETS + toSlot) * MAX_TARGETS
+            + spearSlot;
+        Move result = MOVES.get(k);
+        if (result == null) {
+            MOVES.compareAndSet(k, null, new Move(from, to, spear));
+            result = MOVES.get(k);
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        return result;
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                    to = sq(_moveMatcher.group(k + 1)),
-                    spear = sq(_moveMatcher.group(k + 2));
+        Matcher moveMatcher = MOVE_PATTERN.matcher(str);
+        if (moveMatcher.matches()) {
+            int k = moveMatcher.group(1) != null ? 1 : 4;
+            Square from = sq(moveMatcher.group(k)),
+                    to = sq(moveMatcher.group(k + 1)),
+                    spear = sq(moveMatcher.group(k + 2));
             if (from.isQueenMove(to) && to.isQueenMove(spear)) {
                 return mv(from, to, spear);
             }
@@ -66,29 +119,61 @@ final class Move {
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
     public String toString() {
+        if (_str == null) {
+            _str = String.format("%s-%s(%s)", _from, _to, _spear);
+        }
         return _str;
     }
 
     /** Construct the Move FROM-TO(SPEAR). */
     private Move(Square from, Square to, Square spear) {
         _from = from; _to = to; _spear = spear;
-        _str = String.format("%s-%s(%s)", from, to, spear);
+        _code = code(from.index(), to.index(), spear.index());
+    }
+
+    /** Number of bits per square index in a move code. */
+    static final int CODE_BITS = 7;
+    /** Mask for one square index in a move code. */
+    private static final int CODE_MASK = (1 << CODE_BITS) - 1;
+
+    /** The most squares a queen move can reach from any square. */
+    private static final int MAX_TARGETS = 4 * (Board.SIZE - 1) - 1;
+
+    /** SLOT[f][t] numbers the queen moves f-t from each square f
+     *  consecutively from 0, and is -1 where f-t is not a queen move. */
+    private static final byte[][] SLOT =
+        new byte[Board.SIZE * Board.SIZE][Board.SIZE * Board.SIZE];
+
+    static {
+        for (int f = 0; f < Board.SIZE * Board.SIZE; f += 1) {
+            byte slot = 0;
+            for (int t = 0; t < Board.SIZE * Board.SIZE; t += 1) {
+                if (Square.sq(f).isQueenMove(Square.sq(t))) {
+                    SLOT[f][t] = slot++;
+                } else {
+                    SLOT[f][t] = -1;
+                }
+            }
+        }
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** The cache of all Moves created, indexed by from square and the
+     *  SLOTs of the piece move and spear throw.  Only geometrically
+     *  possible moves have places. */
+    private static final AtomicReferenceArray<Move> MOVES =
+        new AtomicReferenceArray<>(Board.SIZE * Board.SIZE
+                                   * MAX_TARGETS * MAX_TARGETS);
 
     /** The components of a Move. */
     private final Square _from, _to, _spear;
-    /** The printed form of a Move. */
+    /** My code. */
+    private final int _code;
+    /** The printed form of a Move, computed when first needed. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
 
@@ -0,0 +1,210 @@
+package amazons;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/** A read-only opening book: a file mapping positions, identified by
+ *  Board.hash(), to weighted moves.  The file is memory-mapped and
+ *  searched in place, so a lookup is a binary search over the mapped
+ *  pages and needs no heap-resident table.
+ *
+ *  The file is big-endian: a 16-byte header (MAGIC, the entry size,
+ *  and the number of entries as a long), then the entries, sorted by
+ *  key (as signed longs) and, for each key, by decreasing weight.  Each
+ *  entry is ENTRY_BYTES long: the key (a long), a move code (see
+ *  Move.code) as an int, and a positive weight as an int.  Books are
+ *  written by a Builder (see BookBuilder).
+ *
+ *  Keys are hashes, so a move from the book must be checked for
+ *  legality before it is played.  Lookups may be made concurrently.
+ *  @author Netra Sathe
+ */
+final class OpeningBook {
+
+    /** Size of an entry in bytes. */
+    static final int ENTRY_BYTES = 16;
+
+    /** The book in the file named PATH. */
+    OpeningBook(String path) throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("bad opening book size: " + path);
+            }
+            _data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        _data.order(ByteOrder.BIG_ENDIAN);
+        long entries = _data.getLong(COUNT_OFFSET);
+        if (_data.getInt(0) != MAGIC
+            || _data.getInt(Integer.BYTES) != ENTRY_BYTES
+            || entries != (_data.capacity() - HEADER_BYTES) / ENTRY_BYTES
+            || (_data.capacity() - HEADER_BYTES) % ENTRY_BYTES != 0) {
+            throw new IOException("not an opening book: " + path);
+        }
+        _size = (int) entries;
+    }
+
+    /** Return the number of entries (position-move pairs). */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of moves recorded for the position with
+     *  KEY. */
+    int count(long key) {
+        int first = lowerBound(key);
+        int k = first;
+        while (k < _size && key(k) == key) {
+            k += 1;
+        }
+        return k - first;
+    }
+
+    /** Return the code of the most heavily weighted move recorded for
+     *  the position with KEY, or 0 if there is none. */
+    int bestMove(long key) {
+        int k = lowerBound(key);
+        return k < _size && key(k) == key ? move(k) : 0;
+    }
+
+    /** Return the code of a move recorded for the position with KEY,
+     *  chosen at random using RANDOM with probability proportional to
+     *  its weight, or 0 if there is none. */
+    int move(long key, Random random) {
+        int first = lowerBound(key);
+        long total = 0;
+        int k;
+        for (k = first; k < _size && key(k) == key; k += 1) {
+            total += weight(k);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long pick = (long) (random.nextDouble() * total);
+        for (int i = first; i < k; i += 1) {
+            pick -= weight(i);
+            if (pick < 0) {
+                return move(i);
+            }
+        }
+        return move(k - 1);
+    }
+
+    /** Return the index of the first entry whose key is at least KEY
+     *  (or size() if there is none). */
+    private int lowerBound(long key) {
+        int lo = 0, hi = _size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key(mid) < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Return the key of entry K. */
+    private long key(int k) {
+        return _data.getLong(HEADER_BYTES + k * ENTRY_BYTES);
+    }
+
+    /** Return the move code of entry K. */
+    private int move(int k) {
+        return _data.getInt(HEADER_BYTES + k * ENTRY_BYTES + Long.BYTES);
+    }
+
+    /** Return the weight of entry K. */
+    private int weight(int k) {
+        return _data.getInt(HEADER_BYTES + k * ENTRY_BYTES + Long.BYTES
+                            + Integer.BYTES);
+    }
+
+    /** Accumulates weighted moves in memory and writes them as a
+     *  book. */
+    static final class Builder {
+
+        /** Add WEIGHT (positive) to the weight of the move with code MOVE
+         *  in the position with KEY. */
+        void add(long key, int move, int weight) {
+            if (move == 0 || weight <= 0) {
+                throw Utils.error("book entries need a move and a"
+                                  + " positive weight");
+            }
+            _moves.computeIfAbsent(key, k -> new HashMap<>())
+                .merge(move, weight, Integer::sum);
+        }
+
+        /** Add the entries of BOOK. */
+        void addAll(OpeningBook book) {
+            for (int k = 0; k < book._size; k += 1) {
+                add(book.key(k), book.move(k), book.weight(k));
+            }
+        }
+
+        /** Return the number of positions added. */
+        int positions() {
+            return _moves.size();
+        }
+
+        /** Write my entries as a book in the file named PATH. */
+        void write(String path) throws IOException {
+            long entries = 0;
+            for (Map<Integer, Integer> moves : _moves.values()) {
+                entries += moves.size();
+            }
+            if (HEADER_BYTES + entries * ENTRY_BYTES > Integer.MAX_VALUE) {
+                throw Utils.error("opening book too large");
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(path)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(ENTRY_BYTES);
+                out.writeLong(entries);
+                for (Map.Entry<Long, Map<Integer, Integer>> position
+                         : _moves.entrySet()) {
+                    List<Map.Entry<Integer, Integer>> moves =
+                        new ArrayList<>(position.getValue().entrySet());
+                    moves.sort((a, b) -> b.getValue() - a.getValue());
+                    for (Map.Entry<Integer, Integer> move : moves) {
+                        out.writeLong(position.getKey());
+                        out.writeInt(move.getKey());
+                        out.writeInt(move.getValue());
+                    }
+                }
+            }
+        }
+
+        /** Weights of the moves added, by key and move code, in order of
+         *  key. */
+        private final TreeMap<Long, Map<Integer, Integer>> _moves =
+            new TreeMap<>();
+    }
+
+    /** First word of a book file ("AMZB"). */
+    private static final int MAGIC = 0x414d5a42;
+    /** Size of the file header. */
+    private static final int HEADER_BYTES = 16;
+    /** Position of the entry count in the header. */
+    private static final int COUNT_OFFSET = 8;
+
+    /** The mapped file. */
+    private final MappedByteBuffer _data;
+    /** Number of entries. */
+    private final int _size;
+}
@@ -0,0 +1,361 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import ucb.util.CommandArgs;
+
+/** A move-generation counter ("perft"): counts the positions reached
+ *  after exactly DEPTH plies from a given position, playing every legal
+ *  move at each ply.  A position reached in fewer than DEPTH plies in
+ *  which the side to move has no moves contributes no leaf positions.
+ *  The counts are a correctness oracle for Board.legalMoves, makeMove,
+ *  and undo, and the time taken measures their throughput.
+ *
+ *  The count may be broken down by first move ("divide"), computed on a
+ *  fork-join pool, and sped up with a hashed cache of subtree counts
+ *  keyed by position and remaining depth.  Counting is done with the
+ *  allocation-free move codes; a subtree of depth 1 is counted by
+ *  generating its moves without making them.  With --size, positions
+ *  are counted on a SizedBoard of that size instead.
+ *  @author Netra Sathe
+ */
+public class Perft {
+
+    /** Run the count described by ARGS, printing the total (and, with
+     *  --divide, the count after each first move) with its time and
+     *  rate.  The position is --position (in the text form of Position),
+     *  or else the initial one, followed by the moves in --moves,
+     *  separated by commas. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--depth=(\\d+) --divide --threads=(\\d+){0,1}"
+                            + " --hash=(\\d+){0,1} --position={0,1}"
+                            + " --moves={0,1} --size=(\\d+){0,1}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.Perft --depth=N"
+                               + " [--divide] [--threads=N] [--hash=MB]"
+                               + " [--position=TEXT]"
+                               + " [--moves=MOVE,...] [--size=N]");
+            System.exit(1);
+        }
+
+        try {
+            if (options.contains("--size")) {
+                countSized(options);
+                System.exit(0);
+            }
+            Board board = new Board();
+            if (options.contains("--position")) {
+                Position.parse(options.getFirst("--position"), board);
+            }
+            if (options.contains("--moves")) {
+                for (String str : options.getFirst("--moves").split(",")) {
+                    Move move = Move.mv(str.trim());
+                    if (move == null || !board.isLegal(move)) {
+                        throw Utils.error("illegal move: %s", str);
+                    }
+                    board.makeMove(move);
+                }
+            }
+            Perft perft = new Perft(board);
+            if (options.contains("--threads")) {
+                perft.setThreads(
+                    Integer.parseInt(options.getFirst("--threads")));
+            }
+            if (options.contains("--hash")) {
+                perft.setCache(Integer.parseInt(options.getFirst("--hash")));
+            }
+            int depth = Integer.parseInt(options.getFirst("--depth"));
+
+            long start = System.nanoTime();
+            long total;
+            if (options.contains("--divide")) {
+                total = 0;
+                for (Map.Entry<Move, Long> e
+                         : perft.divide(depth).entrySet()) {
+                    System.out.printf("%s: %d%n", e.getKey(), e.getValue());
+                    total += e.getValue();
+                }
+            } else {
+                total = perft.count(depth);
+            }
+            long nanos = Math.max(1, System.nanoTime() - start);
+            System.out.printf("depth %d: %d positions in %.3f s"
+                              + " (%.0f positions/s)%n", depth, total,
+                              nanos / 1e9, total * 1e9 / nanos);
+            System.exit(0);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Print the count described by OPTIONS, which include --size, on a
+     *  SizedBoard: one thread, no cache, and no division by first
+     *  move. */
+    private static void countSized(CommandArgs options) {
+        if (options.contains("--divide") || options.contains("--threads")
+            || options.contains("--hash")) {
+            throw Utils.error("--divide, --threads, and --hash are not"
+                              + " available with --size");
+        }
+        SizedBoard board = Solver.board(options);
+        int depth = Integer.parseInt(options.getFirst("--depth"));
+        long start = System.nanoTime();
+        long total = board.perft(depth);
+        long nanos = Math.max(1, System.nanoTime() - start);
+        System.out.printf("size %d, depth %d: %d positions in %.3f s"
+                          + " (%.0f positions/s)%n",
+                          board.geometry().size(), depth, total,
+                          nanos / 1e9, total * 1e9 / nanos);
+    }
+
+    /** A counter for the position on BOARD (which it copies), counting
+     *  on one thread without a cache. */
+    Perft(Board board) {
+        _board = new Board(board);
+        _threads = 1;
+    }
+
+    /** Count on THREADS threads; 1 counts on the calling thread. */
+    void setThreads(int threads) {
+        if (threads < 1) {
+            throw Utils.error("need at least one thread");
+        }
+        _threads = threads;
+    }
+
+    /** Cache subtree counts in a table of at most MEGABYTES megabytes, or
+     *  use no cache if MEGABYTES is 0. */
+    void setCache(int megabytes) {
+        _cache = megabytes > 0 ? new Cache(megabytes) : null;
+    }
+
+    /** Return the number of positions DEPTH plies after mine. */
+    long count(int depth) {
+        if (_threads == 1) {
+            return new Counter(depth).count(_board, depth);
+        }
+        return pool().invoke(new Task(_board, depth));
+    }
+
+    /** Return the number of positions DEPTH plies after mine that follow
+     *  each legal first move, in the order generated.  DEPTH must be
+     *  positive. */
+    Map<Move, Long> divide(int depth) {
+        if (depth < 1) {
+            throw Utils.error("divide requires a positive depth");
+        }
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = _board.legalMoves(moves);
+        Map<Move, Long> result = new LinkedHashMap<>();
+        if (_threads == 1) {
+            Counter counter = new Counter(depth);
+            for (int i = 0; i < n; i += 1) {
+                _board.makeMove(moves[i]);
+                result.put(Move.mv(moves[i]),
+                           counter.count(_board, depth - 1));
+                _board.undo();
+            }
+        } else {
+            List<Task> tasks = new ArrayList<>();
+            for (int i = 0; i < n; i += 1) {
+                Board next = new Board(_board);
+                next.makeMove(moves[i]);
+                tasks.add(new Task(next, depth - 1));
+            }
+            pool().invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    invokeAll(tasks);
+                    return null;
+                }
+            });
+            for (int i = 0; i < n; i += 1) {
+                result.put(Move.mv(moves[i]), tasks.get(i).join());
+            }
+        }
+        return result;
+    }
+
+    /** Return the pool used for parallel counts, creating it if
+     *  needed. */
+    private ForkJoinPool pool() {
+        if (_pool == null || _pool.getParallelism() != _threads) {
+            _pool = new ForkJoinPool(_threads);
+        }
+        return _pool;
+    }
+
+    /** A sequential counter, holding one move buffer per ply. */
+    private class Counter {
+
+        /** A counter for subtrees of depth at most DEPTH. */
+        Counter(int depth) {
+            _moves = new int[Math.max(depth, 1)][Board.MAX_MOVES];
+        }
+
+        /** Return the number of positions DEPTH plies after BOARD,
+         *  which is left unchanged. */
+        long count(Board board, int depth) {
+            if (depth == 0) {
+                return 1;
+            }
+            long key = board.hash();
+            if (_cache != null && depth > 1) {
+                long cached = _cache.get(key, depth);
+                if (cached >= 0) {
+                    return cached;
+                }
+            }
+            int[] moves = _moves[depth - 1];
+            int n = board.legalMoves(moves);
+            if (depth == 1 || n == 0) {
+                return n;
+            }
+            long total = 0;
+            for (int i = 0; i < n; i += 1) {
+                board.makeMove(moves[i]);
+                total += count(board, depth - 1);
+                board.undo();
+            }
+            if (_cache != null) {
+                _cache.put(key, depth, total);
+            }
+            return total;
+        }
+
+        /** _moves[d - 1] holds the moves of a subtree of depth d. */
+        private final int[][] _moves;
+    }
+
+    /** A fork-join task counting the positions some number of plies after
+     *  a board it owns.  Subtrees of at most SPLIT_DEPTH plies are counted
+     *  sequentially; deeper ones are split into one task per move. */
+    private class Task extends RecursiveTask<Long> {
+
+        /** A task counting the positions DEPTH plies after BOARD, which
+         *  it may modify. */
+        Task(Board board, int depth) {
+            _board = board;
+            _depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (_depth <= SPLIT_DEPTH) {
+                return new Counter(_depth).count(_board, _depth);
+            }
+            long key = _board.hash();
+            if (_cache != null) {
+                long cached = _cache.get(key, _depth);
+                if (cached >= 0) {
+                    return cached;
+                }
+            }
+            int[] moves = new int[Board.MAX_MOVES];
+            int n = _board.legalMoves(moves);
+            List<Task> tasks = new ArrayList<>(n);
+            for (int i = 0; i < n; i += 1) {
+                Board next = new Board(_board);
+                next.makeMove(moves[i]);
+                tasks.add(new Task(next, _depth - 1));
+            }
+            invokeAll(tasks);
+            long total = 0;
+            for (Task task : tasks) {
+                total += task.join();
+            }
+            if (_cache != null) {
+                _cache.put(key, _depth, total);
+            }
+            return total;
+        }
+
+        /** The position counted from. */
+        private final Board _board;
+        /** Remaining plies. */
+        private final int _depth;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** A fixed-size table of subtree counts indexed by position hash and
+     *  depth, shared by all counting threads without locking.  As in
+     *  TranspositionTable, each slot stores its check value XORed with
+     *  its count, so that an entry torn by concurrent writes reads as
+     *  absent.  New entries always replace old ones. */
+    private static final class Cache {
+
+        /** A cache occupying at most MEGABYTES megabytes (and at least one
+         *  entry). */
+        Cache(int megabytes) {
+            long bytes = (long) megabytes << 20;
+            int size = 1;
+            while ((long) size * 2 * ENTRY_BYTES <= bytes
+                   && size < MAX_ENTRIES) {
+                size *= 2;
+            }
+            _mask = size - 1;
+            _checks = new long[size];
+            _counts = new long[size];
+        }
+
+        /** Return the count recorded for the position with KEY searched
+         *  to DEPTH, or -1 if there is none. */
+        long get(long key, int depth) {
+            long check = check(key, depth);
+            int i = (int) (check & _mask);
+            long count = _counts[i];
+            if (count != 0 && (_checks[i] ^ count) == check) {
+                return count;
+            }
+            return -1;
+        }
+
+        /** Record that the position with KEY has COUNT positions DEPTH
+         *  plies after it. */
+        void put(long key, int depth, long count) {
+            long check = check(key, depth);
+            int i = (int) (check & _mask);
+            _checks[i] = check ^ count;
+            _counts[i] = count;
+        }
+
+        /** Return the value identifying KEY searched to DEPTH. */
+        private static long check(long key, int depth) {
+            return key ^ depth * DEPTH_MIX;
+        }
+
+        /** Bytes used by one entry. */
+        private static final int ENTRY_BYTES = 16;
+        /** Largest number of entries. */
+        private static final int MAX_ENTRIES = 1 << 30;
+        /** Multiplier spreading depths over the bits of a key. */
+        private static final long DEPTH_MIX = 0x9e3779b97f4a7c15L;
+
+        /** Mask selecting an entry from a check value. */
+        private final int _mask;
+        /** Check values XORed with the counts. */
+        private final long[] _checks;
+        /** Recorded counts, parallel to _checks. */
+        private final long[] _counts;
+    }
+
+    /** Largest subtree depth a parallel task counts without splitting. */
+    private static final int SPLIT_DEPTH = 2;
+
+    /** The position counted from. */
+    private final Board _board;
+    /** Number of counting threads. */
+    private int _threads;
+    /** Cache of subtree counts, or null if none. */
+    private Cache _cache;
+    /** Pool for parallel counts, or null if not yet needed. */
+    private ForkJoinPool _pool;
+}
@@ -36,6 +36,13 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Stop any thinking I am doing in the background and let the
+     *  threads I keep for it end, as when I am replaced or my game ends.
+     *  I may still be asked for moves afterwards.  By default, does
+     *  nothing. */
+    void stop() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
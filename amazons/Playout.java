@@ -0,0 +1,141 @@
+package amazons;
+
+import java.util.SplittableRandom;
+
+import static amazons.Piece.*;
+
+/** A stripped-down board for random playouts, of any size, in the
+ *  cell representation of CellBoard.  It keeps no hash, undo, or cached
+ *  winner, and makes no objects once built.
+ *
+ *  A random move is sampled rather than chosen from a list of all legal
+ *  moves: the destinations of each of the mover's amazons are listed (its
+ *  mobility list), one destination is chosen uniformly among them all,
+ *  and the spear is thrown to a square chosen uniformly among those
+ *  reachable from there.  This takes a few ray scans per move, where
+ *  listing every move takes several hundred.  Choices come from a
+ *  seedable generator, so a playout is reproducible.
+ *  @author Netra Sathe
+ */
+final class Playout extends CellBoard {
+
+    /** A standard-size playout board whose random choices are seeded
+     *  with SEED, holding the initial position. */
+    Playout(long seed) {
+        this(Geometry.of(Board.SIZE), seed);
+    }
+
+    /** A playout board with GEOMETRY whose random choices are seeded with
+     *  SEED, holding the initial position. */
+    Playout(Geometry geometry, long seed) {
+        super(geometry);
+        _mobility = new int[_squares][geometry.maxReach()];
+        _counts = new int[_squares];
+        _spears = new int[geometry.maxReach()];
+        setSeed(seed);
+        reset();
+    }
+
+    /** Seed my random choices with SEED. */
+    void setSeed(long seed) {
+        _random = new SplittableRandom(seed);
+    }
+
+    /** Set me to the position on BOARD, with no moves made.  I must be
+     *  of the standard size. */
+    void load(Board board) {
+        checkStandard();
+        clearAmazons();
+        for (int sq = 0; sq < _squares; sq += 1) {
+            place(sq, board.get(Square.sq(sq)));
+        }
+        start(board.turn());
+    }
+
+    /** Set BOARD to my position.  BOARD loses its history.  I must be of
+     *  the standard size. */
+    void store(Board board) {
+        checkStandard();
+        Piece[] contents = new Piece[_squares];
+        for (int sq = 0; sq < _squares; sq += 1) {
+            contents[sq] = get(sq);
+        }
+        board.setPosition(contents, turn());
+    }
+
+    /** Return the number of moves made since the last load. */
+    int plies() {
+        return _plies;
+    }
+
+    /** Return the code of move number K (from 0) since the last load. */
+    int move(int k) {
+        return _history[k];
+    }
+
+    /** Return the number of queen moves (ignoring spear throws) available
+     *  to the side to move; it has a legal move iff this is positive. */
+    int mobility() {
+        return queenMoves(_turn);
+    }
+
+    /** Return the code of a random legal move for the side to move, or 0
+     *  if it has none.  Every queen move is equally likely, as is every
+     *  spear throw following it. */
+    int randomMove() {
+        int[] amazons = _amazons[_turn];
+        int n = _numAmazons[_turn];
+        int total = 0;
+        for (int k = 0; k < n; k += 1) {
+            _counts[k] = destinations(amazons[k], _mobility[k]);
+            total += _counts[k];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        int pick = _random.nextInt(total);
+        int k;
+        for (k = 0; pick >= _counts[k]; k += 1) {
+            pick -= _counts[k];
+        }
+        int from = amazons[k], to = _mobility[k][pick];
+        byte piece = _cells[from];
+        _cells[from] = EMPTY_CELL;
+        int spears = destinations(to, _spears);
+        _cells[from] = piece;
+        int spear = _spears[_random.nextInt(spears)];
+        return _geometry.code(_square[from], _square[to], _square[spear]);
+    }
+
+    /** Make random moves until the side to move has none or MAXPLIES
+     *  moves have been made, and return the winner, or null if the game
+     *  has not ended.  The moves made are available through move. */
+    Piece play(int maxPlies) {
+        for (int ply = 0; ply < maxPlies; ply += 1) {
+            int move = randomMove();
+            if (move == 0) {
+                return _turn == WHITE_SIDE ? BLACK : WHITE;
+            }
+            makeMove(move);
+        }
+        return mobility() == 0 ? (_turn == WHITE_SIDE ? BLACK : WHITE)
+            : null;
+    }
+
+    /** Throw an exception unless I am of the standard size. */
+    private void checkStandard() {
+        if (_geometry.size() != Board.SIZE) {
+            throw Utils.error("only standard-size playouts convert to"
+                              + " Boards");
+        }
+    }
+
+    /** Destinations of each of the mover's amazons, by amazon. */
+    private final int[][] _mobility;
+    /** Number of destinations of each of the mover's amazons. */
+    private final int[] _counts;
+    /** Spear targets from a chosen destination. */
+    private final int[] _spears;
+    /** Source of random choices. */
+    private SplittableRandom _random;
+}
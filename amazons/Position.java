@@ -0,0 +1,295 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** Conversions between Boards and two self-contained descriptions of a
+ *  position (its contents and side to move, but not its history).
+ *
+ *  The binary form is BYTES (26) bytes.  The first 25 hold two bits per
+ *  square in order of Square index, four squares to a byte with the
+ *  lowest index in the high-order bits; each square's bits are its
+ *  Piece's ordinal (EMPTY 0, WHITE 1, BLACK 2, SPEAR 3).  The last byte
+ *  is 0 when white is to move and 1 when black is.  Equal positions have
+ *  equal encodings, and comparing encodings as unsigned bytes (see
+ *  compare) orders positions, so encodings may be sorted, searched, and
+ *  hashed directly.  The canonical encoding is the least encoding among
+ *  the eight rotations and reflections of a position, all of which are
+ *  equivalent in play.
+ *
+ *  The text form is one line, like chess's FEN: the rows from 10 down to
+ *  1, separated by '/', each listing its squares from column a to j with
+ *  W, B, and S for pieces and a decimal count for each run of empty
+ *  squares; then a space and w or b for the side to move.  The initial
+ *  position is 3B2B3/10/10/B8B/10/10/W8W/10/10/3W2W3 w.  The same form,
+ *  with as many rows as the board has, describes positions on boards
+ *  of other sizes (see SizedBoard).
+ *  @author Netra Sathe
+ */
+final class Position {
+
+    /** Length of a binary encoding. */
+    static final int BYTES = 26;
+
+    /** Return the binary encoding of the position on BOARD. */
+    static byte[] encode(Board board) {
+        byte[] data = new byte[BYTES];
+        encode(board, data, 0);
+        return data;
+    }
+
+    /** Store the binary encoding of the position on BOARD in DATA,
+     *  starting at OFFSET. */
+    static void encode(Board board, byte[] data, int offset) {
+        encode(board, 0, data, offset);
+    }
+
+    /** Return the canonical binary encoding of the position on BOARD:
+     *  the least of the encodings of its symmetric images. */
+    static byte[] canonical(Board board) {
+        byte[] best = new byte[BYTES];
+        byte[] next = new byte[BYTES];
+        encode(board, 0, best, 0);
+        for (int t = 1; t < SYMMETRIES; t += 1) {
+            encode(board, t, next, 0);
+            if (compare(next, 0, best, 0) < 0) {
+                byte[] tmp = best;
+                best = next;
+                next = tmp;
+            }
+        }
+        return best;
+    }
+
+    /** Set BOARD to the position whose binary encoding is in DATA,
+     *  starting at OFFSET. */
+    static void decode(byte[] data, int offset, Board board) {
+        Piece[] contents = new Piece[SQUARES];
+        Piece[] pieces = Piece.values();
+        for (int i = 0; i < SQUARES; i += 1) {
+            int b = data[offset + i / PER_BYTE] & 0xff;
+            contents[i] = pieces[(b >>> shift(i)) & 3];
+        }
+        int side = data[offset + BYTES - 1];
+        if (side != 0 && side != 1) {
+            throw Utils.error("bad side to move in position encoding");
+        }
+        set(board, contents, side == 0 ? WHITE : BLACK);
+    }
+
+    /** Return a new Board holding the position whose binary encoding is
+     *  DATA. */
+    static Board decode(byte[] data) {
+        if (data.length != BYTES) {
+            throw Utils.error("position encoding must be %d bytes", BYTES);
+        }
+        Board board = new Board();
+        decode(data, 0, board);
+        return board;
+    }
+
+    /** Return a negative number, zero, or a positive number depending on
+     *  whether the encoding in A at AOFFSET is less than, equal to, or
+     *  greater than the encoding in B at BOFFSET, comparing bytes as
+     *  unsigned numbers. */
+    static int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+        for (int i = 0; i < BYTES; i += 1) {
+            int c = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the text form of the position on BOARD. */
+    static String toText(Board board) {
+        Piece[] contents = new Piece[SQUARES];
+        for (int i = 0; i < SQUARES; i += 1) {
+            contents[i] = board.get(Square.sq(i));
+        }
+        return toText(contents, Board.SIZE, board.turn());
+    }
+
+    /** Return the text form of the position on BOARD, which may be of
+     *  any size: as for a Board, with one row per row of the board. */
+    static String toText(SizedBoard board) {
+        int size = board.geometry().size();
+        Piece[] contents = new Piece[size * size];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = board.get(i);
+        }
+        return toText(contents, size, board.turn());
+    }
+
+    /** Set BOARD to the position whose text form is TEXT. */
+    static void parse(String text, Board board) {
+        Piece[] contents = new Piece[SQUARES];
+        Piece side = parse(text, Board.SIZE, contents);
+        set(board, contents, side);
+    }
+
+    /** Return a new Board holding the position whose text form is
+     *  TEXT. */
+    static Board parse(String text) {
+        Board board = new Board();
+        parse(text, board);
+        return board;
+    }
+
+    /** Return a new SizedBoard holding the position whose text form is
+     *  TEXT, whose size is its number of rows. */
+    static SizedBoard parseSized(String text) {
+        int size = text.trim().split("\\s+")[0].split("/", -1).length;
+        Geometry geometry = Geometry.of(size);
+        Piece[] contents = new Piece[geometry.squares()];
+        Piece side = parse(text, size, contents);
+        SizedBoard board = new SizedBoard(geometry);
+        board.set(contents, side);
+        return board;
+    }
+
+    /** Return the text form of the position of size SIZE with CONTENTS[i]
+     *  on the square with index i and TURN to move. */
+    private static String toText(Piece[] contents, int size, Piece turn) {
+        StringBuilder out = new StringBuilder();
+        for (int row = size - 1; row >= 0; row -= 1) {
+            int empty = 0;
+            for (int col = 0; col < size; col += 1) {
+                Piece p = contents[row * size + col];
+                if (p == EMPTY) {
+                    empty += 1;
+                } else {
+                    if (empty > 0) {
+                        out.append(empty);
+                        empty = 0;
+                    }
+                    out.append(p);
+                }
+            }
+            if (empty > 0) {
+                out.append(empty);
+            }
+            if (row > 0) {
+                out.append('/');
+            }
+        }
+        out.append(turn == WHITE ? " w" : " b");
+        return out.toString();
+    }
+
+    /** Fill CONTENTS with the squares of the position of size SIZE whose
+     *  text form is TEXT, by index, and return its side to move. */
+    private static Piece parse(String text, int size, Piece[] contents) {
+        String[] parts = text.trim().split("\\s+");
+        if (parts.length != 2
+            || !parts[1].equals("w") && !parts[1].equals("b")) {
+            throw Utils.error("bad position: %s", text);
+        }
+        String[] rows = parts[0].split("/", -1);
+        if (rows.length != size) {
+            throw Utils.error("bad position: %s", text);
+        }
+        for (int r = 0; r < size; r += 1) {
+            int row = size - 1 - r;
+            int col = 0;
+            String line = rows[r];
+            for (int k = 0; k < line.length(); k += 1) {
+                char c = line.charAt(k);
+                if (Character.isDigit(c)) {
+                    int empty = c - '0';
+                    if (k + 1 < line.length()
+                        && Character.isDigit(line.charAt(k + 1))) {
+                        k += 1;
+                        empty = empty * 10 + line.charAt(k) - '0';
+                    }
+                    if (empty == 0 || col + empty > size) {
+                        throw Utils.error("bad position: %s", text);
+                    }
+                    for (; empty > 0; empty -= 1, col += 1) {
+                        contents[row * size + col] = EMPTY;
+                    }
+                } else {
+                    Piece p = c == 'W' ? WHITE : c == 'B' ? BLACK
+                        : c == 'S' ? SPEAR : null;
+                    if (p == null || col >= size) {
+                        throw Utils.error("bad position: %s", text);
+                    }
+                    contents[row * size + col] = p;
+                    col += 1;
+                }
+            }
+            if (col != size) {
+                throw Utils.error("bad position: %s", text);
+            }
+        }
+        return parts[1].equals("w") ? WHITE : BLACK;
+    }
+
+    /** Store in DATA at OFFSET the binary encoding of the image of the
+     *  position on BOARD under symmetry T. */
+    private static void encode(Board board, int t, byte[] data,
+                               int offset) {
+        int[] map = SYMMETRY[t];
+        for (int k = 0; k < BYTES - 1; k += 1) {
+            data[offset + k] = 0;
+        }
+        for (int i = 0; i < SQUARES; i += 1) {
+            int j = map[i];
+            int p = board.get(Square.sq(i)).ordinal();
+            data[offset + j / PER_BYTE] |= (byte) (p << shift(j));
+        }
+        data[offset + BYTES - 1] = (byte) (board.turn() == WHITE ? 0 : 1);
+    }
+
+    /** Set BOARD to CONTENTS with SIDE to move, after checking that
+     *  neither side has more than four amazons. */
+    private static void set(Board board, Piece[] contents, Piece side) {
+        int white, black;
+        white = black = 0;
+        for (Piece p : contents) {
+            if (p == WHITE) {
+                white += 1;
+            } else if (p == BLACK) {
+                black += 1;
+            }
+        }
+        if (white > MAX_AMAZONS || black > MAX_AMAZONS) {
+            throw Utils.error("too many amazons in position");
+        }
+        board.setPosition(contents, side);
+    }
+
+    /** Return the position within its byte of the bits of the square
+     *  with index I. */
+    private static int shift(int i) {
+        return 2 * (PER_BYTE - 1 - i % PER_BYTE);
+    }
+
+    /** Number of squares. */
+    private static final int SQUARES = Board.SIZE * Board.SIZE;
+    /** Number of squares encoded per byte. */
+    private static final int PER_BYTE = 4;
+    /** Largest number of amazons of one color. */
+    private static final int MAX_AMAZONS = 4;
+    /** Number of symmetries of the board. */
+    private static final int SYMMETRIES = 8;
+
+    /** SYMMETRY[t][i] is the index of the image of the square with index
+     *  i under symmetry t; symmetry 0 is the identity. */
+    private static final int[][] SYMMETRY = new int[SYMMETRIES][SQUARES];
+
+    static {
+        int last = Board.SIZE - 1;
+        for (int i = 0; i < SQUARES; i += 1) {
+            int c = i % Board.SIZE, r = i / Board.SIZE;
+            int[][] images = {
+                { c, r }, { last - c, r }, { c, last - r },
+                { last - c, last - r }, { r, c }, { last - r, c },
+                { r, last - c }, { last - r, last - c }
+            };
+            for (int t = 0; t < SYMMETRIES; t += 1) {
+                SYMMETRY[t][i] = images[t][1] * Board.SIZE + images[t][0];
+            }
+        }
+    }
+}
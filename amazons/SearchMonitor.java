@@ -0,0 +1,106 @@
+package amazons;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/** Collects the statistics of the searches of one or more AIs for
+ *  inspection through JMX (e.g., with jconsole), once registered.  The
+ *  searches report at most once a move, so a monitor costs nothing
+ *  during a search.  Reports and queries may come from any thread.
+ *  @author Netra Sathe
+ */
+public final class SearchMonitor implements SearchMonitorMXBean {
+
+    /** Name under which register makes monitors visible. */
+    static final String NAME = "amazons:type=SearchMonitor";
+
+    /** Make me visible on the platform MBean server as NAME. */
+    void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                .registerMBean(this, new ObjectName(NAME));
+        } catch (JMException excp) {
+            throw new IllegalStateException(excp);
+        }
+    }
+
+    /** Add STATS, the statistics of a completed search. */
+    synchronized void record(SearchStats stats) {
+        _searches += 1;
+        _totalNodes += stats.nodes();
+        _totalMillis += stats.millis();
+        _last = stats;
+    }
+
+    @Override
+    public synchronized long getSearches() {
+        return _searches;
+    }
+
+    @Override
+    public synchronized long getTotalNodes() {
+        return _totalNodes;
+    }
+
+    @Override
+    public synchronized long getTotalMillis() {
+        return _totalMillis;
+    }
+
+    @Override
+    public synchronized double getNodesPerSecond() {
+        return _totalMillis == 0 ? 0.0
+            : _totalNodes * MILLIS_PER_SECOND / _totalMillis;
+    }
+
+    @Override
+    public synchronized int getLastDepth() {
+        return _last.depth();
+    }
+
+    @Override
+    public synchronized long getLastNodes() {
+        return _last.nodes();
+    }
+
+    @Override
+    public synchronized double getLastNodesPerSecond() {
+        return _last.nodesPerSecond();
+    }
+
+    @Override
+    public synchronized long getLastMillis() {
+        return _last.millis();
+    }
+
+    @Override
+    public synchronized double getLastTableHitRate() {
+        return _last.tableHitRate();
+    }
+
+    @Override
+    public synchronized double getLastFirstMoveCutoffRate() {
+        return _last.firstMoveCutoffRate();
+    }
+
+    @Override
+    public synchronized double getLastBranchingFactor() {
+        return _last.branchingFactor();
+    }
+
+    @Override
+    public synchronized String getLastSearch() {
+        return _last.toString();
+    }
+
+    /** Milliseconds per second. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /** Number of searches recorded. */
+    private long _searches;
+    /** Total nodes and milliseconds of the searches recorded. */
+    private long _totalNodes, _totalMillis;
+    /** Statistics of the latest search. */
+    private SearchStats _last = SearchStats.none(0);
+}
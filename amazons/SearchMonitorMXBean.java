@@ -0,0 +1,47 @@
+package amazons;
+
+/** The management interface of a SearchMonitor: totals over all the
+ *  searches reported to it, and the statistics of the latest (see
+ *  SearchStats).
+ *  @author Netra Sathe
+ */
+public interface SearchMonitorMXBean {
+
+    /** Return the number of searches reported. */
+    long getSearches();
+
+    /** Return the total number of nodes visited. */
+    long getTotalNodes();
+
+    /** Return the total time spent searching, in milliseconds. */
+    long getTotalMillis();
+
+    /** Return the number of nodes visited per second over all
+     *  searches. */
+    double getNodesPerSecond();
+
+    /** Return the depth reached by the latest search. */
+    int getLastDepth();
+
+    /** Return the number of nodes visited by the latest search. */
+    long getLastNodes();
+
+    /** Return the nodes per second of the latest search. */
+    double getLastNodesPerSecond();
+
+    /** Return the time taken by the latest search, in milliseconds. */
+    long getLastMillis();
+
+    /** Return the transposition table hit rate of the latest search. */
+    double getLastTableHitRate();
+
+    /** Return the fraction of the latest search's cutoffs that were
+     *  caused by the first move tried. */
+    double getLastFirstMoveCutoffRate();
+
+    /** Return the average branching factor of the latest search. */
+    double getLastBranchingFactor();
+
+    /** Return a one-line summary of the latest search. */
+    String getLastSearch();
+}
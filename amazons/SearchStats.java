@@ -0,0 +1,135 @@
+package amazons;
+
+import java.util.Arrays;
+
+/** What one AI search did: an immutable summary of counters kept by
+ *  the search threads (plain per-thread increments, so that keeping
+ *  them costs next to nothing) and totaled when the search ends.
+ *  Counts include all threads; the depth and iteration times are those
+ *  of the main thread.  toString produces a one-line summary suitable
+ *  for a log.
+ *  @author Netra Sathe
+ */
+final class SearchStats {
+
+    /** Statistics for a "search" that visited nothing (e.g., a move
+     *  taken from the opening book) and took MILLIS milliseconds. */
+    static SearchStats none(long millis) {
+        return new SearchStats(0, 0, 0, 0, 0, 0, 0, 0, millis,
+                               new long[0]);
+    }
+
+    /** Statistics of a search that visited NODES nodes, of which
+     *  INTERIOR were expanded, visiting CHILDREN children in all, and made
+     *  EVALUATIONS static evaluations, CUTOFFS beta cutoffs (FIRSTCUTOFFS
+     *  of them by the first move tried), and TABLEPROBES transposition
+     *  table probes (TABLEHITS of which found an entry), taking MILLIS
+     *  milliseconds in all and ITERATIONMILLIS[d - 1] milliseconds for
+     *  the iteration of depth d (for each completed iteration). */
+    SearchStats(long nodes, long interior, long children, long evaluations,
+                long cutoffs, long firstCutoffs, long tableProbes,
+                long tableHits, long millis, long[] iterationMillis) {
+        _nodes = nodes;
+        _interior = interior;
+        _children = children;
+        _evaluations = evaluations;
+        _cutoffs = cutoffs;
+        _firstCutoffs = firstCutoffs;
+        _tableProbes = tableProbes;
+        _tableHits = tableHits;
+        _millis = millis;
+        _iterationMillis = iterationMillis.clone();
+    }
+
+    /** Return the number of nodes visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of static evaluations. */
+    long evaluations() {
+        return _evaluations;
+    }
+
+    /** Return the elapsed time in milliseconds. */
+    long millis() {
+        return _millis;
+    }
+
+    /** Return the number of nodes visited per second. */
+    double nodesPerSecond() {
+        return _millis == 0 ? 0.0 : _nodes * MILLIS_PER_SECOND / _millis;
+    }
+
+    /** Return the number of beta cutoffs. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return the number of beta cutoffs caused by the first move
+     *  tried. */
+    long firstMoveCutoffs() {
+        return _firstCutoffs;
+    }
+
+    /** Return the fraction of cutoffs caused by the first move tried. */
+    double firstMoveCutoffRate() {
+        return ratio(_firstCutoffs, _cutoffs);
+    }
+
+    /** Return the number of transposition table probes. */
+    long tableProbes() {
+        return _tableProbes;
+    }
+
+    /** Return the fraction of transposition table probes that found an
+     *  entry. */
+    double tableHitRate() {
+        return ratio(_tableHits, _tableProbes);
+    }
+
+    /** Return the average number of children visited per expanded
+     *  node. */
+    double branchingFactor() {
+        return ratio(_children, _interior);
+    }
+
+    /** Return the depth of the deepest completed iteration (0 if
+     *  none). */
+    int depth() {
+        return _iterationMillis.length;
+    }
+
+    /** Return the time in milliseconds taken by the iteration of depth
+     *  DEPTH, which must have completed. */
+    long iterationMillis(int depth) {
+        return _iterationMillis[depth - 1];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("depth=%d nodes=%d nps=%.0f evals=%d"
+                             + " millis=%d bf=%.1f cutoffs=%d first=%.3f"
+                             + " tt=%.3f iterations=%s",
+                             depth(), _nodes, nodesPerSecond(),
+                             _evaluations, _millis, branchingFactor(),
+                             _cutoffs, firstMoveCutoffRate(),
+                             tableHitRate(),
+                             Arrays.toString(_iterationMillis)
+                             .replace(" ", ""));
+    }
+
+    /** Return NUM / DEN, or 0 if DEN is 0. */
+    private static double ratio(long num, long den) {
+        return den == 0 ? 0.0 : (double) num / den;
+    }
+
+    /** Milliseconds per second. */
+    private static final double MILLIS_PER_SECOND = 1000.0;
+
+    /** Counters (see the constructor). */
+    private final long _nodes, _interior, _children, _evaluations,
+        _cutoffs, _firstCutoffs, _tableProbes, _tableHits, _millis;
+    /** Times of the completed iterations, by depth - 1. */
+    private final long[] _iterationMillis;
+}
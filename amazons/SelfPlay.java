@@ -0,0 +1,377 @@
+package amazons;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static amazons.Piece.*;
+
+/** A headless match runner that plays many games between two AI
+ *  configurations, A and B, on a pool of threads.  Games are played
+ *  directly on Boards, with no Controller or text commands.  The
+ *  engines alternate colors from game to game, and each game opens with
+ *  a few random moves so that deterministic engines do not replay the
+ *  same game.  Those moves and the engines' choices among book moves
+ *  are seeded by the game number.
+ *
+ *  Each engine is described by a comma-separated list of settings:
+ *  depth=D (fixed-depth search), time=MS (milliseconds per move),
+ *  clock=MS and increment=MS (game clock), hash=MB (transposition
+ *  table), threads=N (search threads per engine), split=1 (split
+ *  queen-move and spear-throw search mode), and book=FILE (opening
+ *  book, used only by engines without a fixed depth).  With
+ *  neither a depth nor a time limit, an engine uses the AI's default
+ *  depths.
+ *
+ *  One line of comma-separated values is written per game, followed by
+ *  a summary of win rates on the standard output.  An engine that
+ *  produces no move or an illegal one loses the game by forfeit, noted
+ *  on the standard error.
+ *  @author Netra Sathe
+ */
+public class SelfPlay {
+
+    /** Run the games described by ARGS. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --threads=(\\d+){0,1}"
+                            + " --a={0,1} --b={0,1} --random=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --out={0,1}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.SelfPlay [--games=N]"
+                               + " [--threads=N] [--a=SPEC] [--b=SPEC]"
+                               + " [--random=PLIES] [--seed=N]"
+                               + " [--out=FILE]");
+            System.exit(1);
+        }
+
+        PrintStream out = System.out;
+        if (options.contains("--out")) {
+            try {
+                out = new PrintStream(
+                    new FileOutputStream(options.getFirst("--out")), true);
+            } catch (IOException excp) {
+                System.err.printf("Could not open file: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        try {
+            SelfPlay match =
+                new SelfPlay(new Engine(stringOption(options, "--a", "")),
+                             new Engine(stringOption(options, "--b", "")),
+                             intOption(options, "--random", RANDOM_PLIES),
+                             intOption(options, "--seed", 0), out);
+            match.run(intOption(options, "--games", GAMES),
+                      intOption(options, "--threads",
+                                Runtime.getRuntime().availableProcessors()));
+            out.flush();
+            System.exit(0);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A match between engines A and B, starting each game with
+     *  RANDOMPLIES random moves chosen using seeds derived from SEED, and
+     *  writing per-game results to OUT. */
+    SelfPlay(Engine a, Engine b, int randomPlies, long seed,
+             PrintStream out) {
+        _a = a;
+        _b = b;
+        _randomPlies = randomPlies;
+        _seed = seed;
+        _out = out;
+    }
+
+    /** Play GAMES games using THREADS threads, then report the
+     *  totals. */
+    void run(int games, int threads) {
+        _out.println("game,white,black,winner,plies,millis");
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Result>> pending = new ArrayList<>();
+        for (int g = 0; g < games; g += 1) {
+            final int game = g;
+            pending.add(pool.submit(() -> play(game)));
+        }
+        List<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> result : pending) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
+        } finally {
+            pool.shutdownNow();
+        }
+        summarize(results, System.currentTimeMillis() - start);
+    }
+
+    /** Play game number GAME and return its result.  The game's two AIs
+     *  are stopped at the end, so that they leave no threads behind. */
+    Result play(int game) {
+        boolean aIsWhite = game % 2 == 0;
+        AI white = (aIsWhite ? _a : _b).create(WHITE);
+        AI black = (aIsWhite ? _b : _a).create(BLACK);
+        try {
+            return play(game, aIsWhite, white, black);
+        } finally {
+            white.stop();
+            black.stop();
+        }
+    }
+
+    /** Play game number GAME, in which A plays white iff AISWHITE, between
+     *  WHITE and BLACK, and return its result. */
+    private Result play(int game, boolean aIsWhite, AI white, AI black) {
+        long start = System.currentTimeMillis();
+        Board board = new Board();
+        Random random = new Random(_seed + game);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < _randomPlies && board.winner() == null;
+             i += 1) {
+            board.makeMove(moves[random.nextInt(board.legalMoves(moves))]);
+        }
+        white.setSeed(random.nextLong());
+        black.setSeed(random.nextLong());
+        Piece winner;
+        while ((winner = board.winner()) == null) {
+            Move move;
+            if (board.turn() == WHITE) {
+                move = (aIsWhite ? _a : _b).move(white, board);
+            } else {
+                move = (aIsWhite ? _b : _a).move(black, board);
+            }
+            if (!board.isLegal(move)) {
+                winner = board.turn().opponent();
+                System.err.printf("game %d: %s forfeits by playing %s%n",
+                                  game, board.turn().toName(), move);
+                break;
+            }
+            board.makeMove(move);
+        }
+
+        Result result = new Result(aIsWhite, winner == WHITE,
+                                   board.numMoves(),
+                                   System.currentTimeMillis() - start);
+        synchronized (_out) {
+            _out.printf("%d,%s,%s,%s,%d,%d%n", game,
+                        aIsWhite ? "A" : "B", aIsWhite ? "B" : "A",
+                        result.aWon() ? "A" : "B", result._plies,
+                        result._millis);
+        }
+        return result;
+    }
+
+    /** Print win rates and other totals for RESULTS, which took MILLIS
+     *  milliseconds to play, on the standard output. */
+    private void summarize(List<Result> results, long millis) {
+        int aWins, aWhiteGames, aWhiteWins;
+        long plies;
+        aWins = aWhiteGames = aWhiteWins = 0;
+        plies = 0;
+        for (Result r : results) {
+            if (r.aWon()) {
+                aWins += 1;
+            }
+            if (r._aIsWhite) {
+                aWhiteGames += 1;
+                if (r.aWon()) {
+                    aWhiteWins += 1;
+                }
+            }
+            plies += r._plies;
+        }
+        int n = results.size();
+        System.out.printf("A (%s) vs. B (%s): %d games in %.1f s%n",
+                          _a, _b, n, millis / 1000.0);
+        System.out.printf("A wins %d (%.1f%%): %d of %d as white,"
+                          + " %d of %d as black%n",
+                          aWins, percent(aWins, n), aWhiteWins, aWhiteGames,
+                          aWins - aWhiteWins, n - aWhiteGames);
+        System.out.printf("B wins %d (%.1f%%)%n", n - aWins,
+                          percent(n - aWins, n));
+        System.out.printf("Average game length %.1f plies%n",
+                          n == 0 ? 0.0 : (double) plies / n);
+    }
+
+    /** Return K as a percentage of N. */
+    private static double percent(int k, int n) {
+        return n == 0 ? 0.0 : 100.0 * k / n;
+    }
+
+    /** Return the value of integer option KEY in OPTIONS, or DEFAULTVALUE
+     *  if it is absent. */
+    private static int intOption(CommandArgs options, String key,
+                                 int defaultValue) {
+        if (options.contains(key)) {
+            return Integer.parseInt(options.getFirst(key));
+        }
+        return defaultValue;
+    }
+
+    /** Return the value of option KEY in OPTIONS, or DEFAULTVALUE if it
+     *  is absent. */
+    private static String stringOption(CommandArgs options, String key,
+                                       String defaultValue) {
+        if (options.contains(key)) {
+            return options.getFirst(key);
+        }
+        return defaultValue;
+    }
+
+    /** An AI configuration taking part in a match. */
+    static class Engine {
+
+        /** The configuration described by SPEC (see the class comment). */
+        Engine(String spec) {
+            _spec = spec;
+            int hash = AI.DEFAULT_TABLE_MEGABYTES;
+            long time, clock, increment;
+            time = clock = increment = 0;
+            int threads = 1;
+            boolean split = false;
+            OpeningBook book = null;
+            for (String setting : spec.split(",")) {
+                if (setting.isEmpty()) {
+                    continue;
+                }
+                String[] keyValue = setting.split("=", 2);
+                if (keyValue.length != 2) {
+                    throw Utils.error("bad engine setting: %s", setting);
+                }
+                if (keyValue[0].equals("book")) {
+                    book = openBook(keyValue[1]);
+                    continue;
+                }
+                int value;
+                try {
+                    value = Integer.parseInt(keyValue[1]);
+                } catch (NumberFormatException excp) {
+                    throw Utils.error("bad engine setting: %s", setting);
+                }
+                switch (keyValue[0]) {
+                case "depth":
+                    _depth = value;
+                    break;
+                case "time":
+                    time = value;
+                    break;
+                case "clock":
+                    clock = value;
+                    break;
+                case "increment":
+                    increment = value;
+                    break;
+                case "hash":
+                    hash = value;
+                    break;
+                case "threads":
+                    threads = value;
+                    break;
+                case "split":
+                    split = value != 0;
+                    break;
+                default:
+                    throw Utils.error("unknown engine setting: %s",
+                                      keyValue[0]);
+                }
+            }
+            _template = new AI(hash);
+            _template.setTimeControl(time, clock, increment);
+            _template.setThreads(threads);
+            _template.setBook(book);
+            _template.setSplitMoves(split);
+        }
+
+        /** Return the opening book in the file named PATH. */
+        private static OpeningBook openBook(String path) {
+            try {
+                return new OpeningBook(path);
+            } catch (IOException excp) {
+                throw Utils.error("could not open opening book: %s",
+                                  excp.getMessage());
+            }
+        }
+
+        /** Return a new AI with my configuration, playing PIECE. */
+        AI create(Piece piece) {
+            return (AI) _template.create(piece, null);
+        }
+
+        /** Return the move that AI, which has my configuration, chooses
+         *  in BOARD. */
+        Move move(AI ai, Board board) {
+            if (_depth > 0) {
+                return ai.findMove(board, _depth);
+            }
+            return ai.findMove(board);
+        }
+
+        @Override
+        public String toString() {
+            return _spec.isEmpty() ? "default" : _spec;
+        }
+
+        /** The description I was created from. */
+        private final String _spec;
+        /** Template for my AIs. */
+        private final AI _template;
+        /** Fixed search depth, or 0 if the AI chooses. */
+        private int _depth;
+    }
+
+    /** The outcome of one game. */
+    private static class Result {
+
+        /** The result of a game in which A played white iff AISWHITE,
+         *  white won iff WHITEWON, and which lasted PLIES plies and MILLIS
+         *  milliseconds. */
+        Result(boolean aIsWhite, boolean whiteWon, int plies, long millis) {
+            _aIsWhite = aIsWhite;
+            _whiteWon = whiteWon;
+            _plies = plies;
+            _millis = millis;
+        }
+
+        /** Return true iff engine A won. */
+        boolean aWon() {
+            return _aIsWhite == _whiteWon;
+        }
+
+        /** True iff A played white. */
+        private final boolean _aIsWhite;
+        /** True iff white won. */
+        private final boolean _whiteWon;
+        /** Length of the game. */
+        private final int _plies;
+        /** Duration of the game. */
+        private final long _millis;
+    }
+
+    /** Default number of games. */
+    private static final int GAMES = 100;
+    /** Default number of random opening plies. */
+    private static final int RANDOM_PLIES = 2;
+
+    /** The two engines. */
+    private final Engine _a, _b;
+    /** Number of random moves at the start of each game. */
+    private final int _randomPlies;
+    /** Base random seed. */
+    private final long _seed;
+    /** Destination of per-game results. */
+    private final PrintStream _out;
+}
@@ -0,0 +1,201 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A complete Amazons position on a board of any size (see Geometry),
+ *  with what a full search needs: every legal move listed into a
+ *  buffer, make and undo, a Zobrist hash, and a move-generation count
+ *  (perft).  Board, which the rest of the program uses, is fixed at the
+ *  standard size; this is the board that Solver searches, so that small
+ *  boards can be solved outright and large ones analyzed.
+ *
+ *  The position is held as in Playout, in the cell representation of
+ *  CellBoard.
+ *  @author Netra Sathe
+ */
+final class SizedBoard extends CellBoard {
+
+    /** A board with GEOMETRY, holding the initial position. */
+    SizedBoard(Geometry geometry) {
+        super(geometry);
+        reset();
+    }
+
+    /** A board of size SIZE, holding the initial position. */
+    SizedBoard(int size) {
+        this(Geometry.of(size));
+    }
+
+    @Override
+    void set(Piece[] contents, Piece side) {
+        super.set(contents, side);
+        _key = 0;
+        for (int sq = 0; sq < _squares; sq += 1) {
+            _key ^= _geometry.zobrist(contents[sq], sq);
+        }
+        if (_turn == BLACK_SIDE) {
+            _key ^= _geometry.zobristBlackToMove();
+        }
+    }
+
+    /** Return the number of moves made since the last set or reset and
+     *  not undone. */
+    int numMoves() {
+        return _plies;
+    }
+
+    /** Return a Zobrist hash of this position (contents and side to
+     *  move), maintained incrementally. */
+    long hash() {
+        return _key;
+    }
+
+    /** Return the number of SIDE's amazons. */
+    int amazons(Piece side) {
+        return _numAmazons[side(side)];
+    }
+
+    /** Return a size for move buffers that holds all the legal moves of
+     *  either side in any position reachable from this one. */
+    int maxMoves() {
+        int reach = _geometry.maxReach();
+        return Math.max(1, Math.max(_numAmazons[WHITE_SIDE],
+                                    _numAmazons[BLACK_SIDE])
+                        * reach * reach);
+    }
+
+    /** Return the winner, or null if the side to move has a legal move
+     *  (and so the game is not over). */
+    Piece winner() {
+        return mobility(turn()) > 0 ? null : turn().opponent();
+    }
+
+    /** Return the number of queen moves (ignoring spear throws) available
+     *  to SIDE's amazons; SIDE has a legal move iff this is positive. */
+    int mobility(Piece side) {
+        return queenMoves(side(side));
+    }
+
+    /** Fill MOVES with the codes of all legal moves for the side to move,
+     *  and return how many there are.  MOVES must have room for them all
+     *  (see maxMoves). */
+    int legalMoves(int[] moves) {
+        byte[] cells = _cells;
+        int[] amazons = _amazons[_turn];
+        int n = 0;
+        for (int k = 0; k < _numAmazons[_turn]; k += 1) {
+            int from = amazons[k];
+            int fromSq = _square[from];
+            byte piece = cells[from];
+            cells[from] = EMPTY_CELL;
+            for (int d : _delta) {
+                for (int to = from + d; cells[to] == EMPTY_CELL; to += d) {
+                    int toSq = _square[to];
+                    for (int d2 : _delta) {
+                        for (int s = to + d2; cells[s] == EMPTY_CELL;
+                             s += d2) {
+                            moves[n++] = _geometry.code(fromSq, toSq,
+                                                        _square[s]);
+                        }
+                    }
+                }
+            }
+            cells[from] = piece;
+        }
+        return n;
+    }
+
+    /** Return true iff the move with code MOVE is legal in the current
+     *  position. */
+    boolean isLegal(int move) {
+        int from = _cell[_geometry.from(move)],
+            to = _cell[_geometry.to(move)],
+            spear = _cell[_geometry.spear(move)];
+        if (_cells[from] != (_turn == WHITE_SIDE ? WHITE_CELL : BLACK_CELL)
+            || !reaches(from, to)) {
+            return false;
+        }
+        byte piece = _cells[from];
+        _cells[from] = EMPTY_CELL;
+        boolean result = reaches(to, spear);
+        _cells[from] = piece;
+        return result;
+    }
+
+    @Override
+    void makeMove(int move) {
+        Piece p = turn();
+        int fromSq = _geometry.from(move), toSq = _geometry.to(move);
+        _key ^= _geometry.zobrist(p, fromSq) ^ _geometry.zobrist(p, toSq)
+            ^ _geometry.zobrist(SPEAR, _geometry.spear(move))
+            ^ _geometry.zobristBlackToMove();
+        super.makeMove(move);
+    }
+
+    /** Undo the last move made since the last set or reset, if any. */
+    void undo() {
+        if (_plies == 0) {
+            return;
+        }
+        _plies -= 1;
+        int move = _history[_plies];
+        _turn ^= 1;
+        int fromSq = _geometry.from(move), toSq = _geometry.to(move),
+            spearSq = _geometry.spear(move);
+        int from = _cell[fromSq], to = _cell[toSq];
+        _cells[_cell[spearSq]] = EMPTY_CELL;
+        byte piece = _cells[to];
+        Piece p = PIECES[piece];
+        _cells[from] = piece;
+        _cells[to] = EMPTY_CELL;
+        replace(_amazons[_turn], _numAmazons[_turn], to, from);
+        _key ^= _geometry.zobrist(p, fromSq) ^ _geometry.zobrist(p, toSq)
+            ^ _geometry.zobrist(SPEAR, spearSq)
+            ^ _geometry.zobristBlackToMove();
+    }
+
+    /** Return the number of positions DEPTH plies after this one, as
+     *  counted by Perft: positions in which the side to move has no
+     *  moves before DEPTH plies contribute no leaf positions. */
+    long perft(int depth) {
+        int[][] buffers = new int[Math.max(depth, 1)][maxMoves()];
+        return perft(depth, buffers);
+    }
+
+    /** Return the number of positions DEPTH plies after this one, using
+     *  BUFFERS[d - 1] for the moves of a subtree of depth d. */
+    private long perft(int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int n = legalMoves(moves);
+        if (depth == 1 || n == 0) {
+            return n;
+        }
+        long total = 0;
+        for (int i = 0; i < n; i += 1) {
+            makeMove(moves[i]);
+            total += perft(depth - 1, buffers);
+            undo();
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        int size = _geometry.size();
+        for (int row = size - 1; row >= 0; row -= 1) {
+            out.append("  ");
+            for (int col = 0; col < size; col += 1) {
+                out.append(' ').append(get(_geometry.index(col, row)));
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Zobrist hash of the current position. */
+    private long _key;
+}
@@ -0,0 +1,308 @@
+package amazons;
+
+import ucb.util.CommandArgs;
+
+import static amazons.Piece.*;
+
+/** Searches of positions on SizedBoards, of any size.  solve finds the
+ *  winner with perfect play by searching every line to the end of the
+ *  game: an alpha-beta search with the null window of won or lost,
+ *  which stops at a node's first winning move, with a table of the
+ *  positions already proven won or lost (transpositions are common, as
+ *  moves by different amazons commute) and a check of each node's
+ *  children in the table before any is searched.  That is practical
+ *  for small boards and for late positions on larger ones.  search is a
+ *  fixed-depth alpha-beta search for analysis where solving is out of
+ *  reach, scoring its leaves by the difference in the two sides' queen
+ *  mobility.
+ *
+ *  A Solver searches its board in place, leaving it as it found it.
+ *  It is not thread-safe.
+ *  @author Netra Sathe
+ */
+final class Solver {
+
+    /** Value of a position whose side to move has won, less the number
+     *  of plies from the root to the end of the game. */
+    static final int WIN = 1 << 20;
+
+    /** Solve or analyze the position described by ARGS on a board of
+     *  --size (by default the standard size): the initial position, or
+     *  --position (in the text form of Position, with one row per row),
+     *  followed by the moves in --moves, separated by commas.  With
+     *  --depth, prints the value and best move found by searching that
+     *  many plies; otherwise, the winner and a best move. */
+    public static void main(String... args) {
+        CommandArgs options =
+            new CommandArgs("--size=(\\d+){0,1} --position={0,1}"
+                            + " --moves={0,1} --depth=(\\d+){0,1}"
+                            + " --hash=(\\d+){0,1}", args);
+        if (!options.ok()) {
+            System.err.println("Usage: java amazons.Solver [--size=N]"
+                               + " [--position=TEXT] [--moves=MOVE,...]"
+                               + " [--depth=N] [--hash=MB]");
+            System.exit(1);
+        }
+
+        try {
+            SizedBoard board = board(options);
+            Solver solver = options.contains("--hash")
+                ? new Solver(board,
+                             Integer.parseInt(options.getFirst("--hash")))
+                : new Solver(board);
+            Geometry geometry = board.geometry();
+            long start = System.nanoTime();
+            if (options.contains("--depth")) {
+                int depth = Integer.parseInt(options.getFirst("--depth"));
+                int value = solver.search(depth);
+                System.out.printf("depth %d: value %d, best move %s%n",
+                                  depth, value, moveName(geometry,
+                                                         solver.bestMove()));
+            } else {
+                Piece winner = solver.solve();
+                System.out.printf("%s wins; best move %s%n", winner.toName(),
+                                  moveName(geometry, solver.bestMove()));
+            }
+            long nanos = Math.max(1, System.nanoTime() - start);
+            System.out.printf("%d nodes in %.3f s (%.0f nodes/s)%n",
+                              solver.nodes(), nanos / 1e9,
+                              solver.nodes() * 1e9 / nanos);
+            System.exit(0);
+        } catch (IllegalArgumentException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Return the board described by the --size, --position, and --moves
+     *  options in OPTIONS (see main). */
+    static SizedBoard board(CommandArgs options) {
+        int size = Board.SIZE;
+        if (options.contains("--size")) {
+            size = Integer.parseInt(options.getFirst("--size"));
+        }
+        SizedBoard board;
+        if (options.contains("--position")) {
+            board = Position.parseSized(options.getFirst("--position"));
+            if (board.geometry().size() != size
+                && options.contains("--size")) {
+                throw Utils.error("position is not of size %d", size);
+            }
+        } else {
+            board = new SizedBoard(size);
+        }
+        if (options.contains("--moves")) {
+            for (String str : options.getFirst("--moves").split(",")) {
+                int move = board.geometry().moveCode(str);
+                if (move == 0 || !board.isLegal(move)) {
+                    throw Utils.error("illegal move: %s", str);
+                }
+                board.makeMove(move);
+            }
+        }
+        return board;
+    }
+
+    /** A solver for BOARD, with a table of positions occupying at most
+     *  AI.DEFAULT_TABLE_MEGABYTES megabytes. */
+    Solver(SizedBoard board) {
+        this(board, AI.DEFAULT_TABLE_MEGABYTES);
+    }
+
+    /** A solver for BOARD, with a table of positions occupying at most
+     *  MEGABYTES megabytes (and at least one entry). */
+    Solver(SizedBoard board, int megabytes) {
+        _board = board;
+        long bytes = (long) megabytes << 20;
+        int size = 1;
+        while ((long) size * 2 * ENTRY_BYTES <= bytes
+               && size < MAX_ENTRIES) {
+            size *= 2;
+        }
+        _mask = size - 1;
+        _keys = new long[size];
+        _results = new byte[size];
+        _buffers = new int[board.geometry().squares() + 1][];
+        _scores = new int[_buffers.length][];
+    }
+
+    /** Return the winner of my board's position with perfect play,
+     *  recording as bestMove a winning move if the side to move wins,
+     *  or else its first legal move (0 if it has none).  Proven
+     *  positions are remembered from one call to the next. */
+    Piece solve() {
+        _bestMove = 0;
+        Piece turn = _board.turn();
+        return wins(0) ? turn : turn.opponent();
+    }
+
+    /** Return the value for the side to move of my board's position
+     *  searched DEPTH plies deep: +-(WIN - plies) if the game ends within
+     *  DEPTH plies, and otherwise the leaves' difference in queen
+     *  mobility, backed up by alpha-beta.  Records as bestMove the move
+     *  achieving it (0 if there is none). */
+    int search(int depth) {
+        _bestMove = 0;
+        return search(depth, 0, -INFTY, INFTY);
+    }
+
+    /** Return the move recorded by the last solve or search. */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the number of positions visited by all my searches. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return true iff the side to move wins my board's position, which
+     *  is PLY plies from the root, with perfect play. */
+    private boolean wins(int ply) {
+        _nodes += 1;
+        long key = _board.hash();
+        int i = (int) key & _mask;
+        if (ply > 0 && _keys[i] == key && _results[i] != UNKNOWN) {
+            return _results[i] == WON;
+        }
+        int[] moves = buffer(ply);
+        int n = _board.legalMoves(moves);
+        int winning = -1;
+        Piece turn = _board.turn();
+        int[] scores = scoreBuffer(ply);
+        for (int j = 0; j < n && winning < 0; j += 1) {
+            _board.makeMove(moves[j]);
+            if (lost(_board.hash())) {
+                winning = j;
+            } else {
+                scores[j] = _board.mobility(turn)
+                    - 2 * _board.mobility(turn.opponent());
+            }
+            _board.undo();
+        }
+        if (winning < 0) {
+            sort(moves, scores, n);
+        }
+        for (int j = 0; j < n && winning < 0; j += 1) {
+            _board.makeMove(moves[j]);
+            if (!wins(ply + 1)) {
+                winning = j;
+            }
+            _board.undo();
+        }
+        if (ply == 0 && n > 0) {
+            _bestMove = moves[Math.max(winning, 0)];
+        }
+        i = (int) key & _mask;
+        _keys[i] = key;
+        _results[i] = winning >= 0 ? WON : LOST;
+        return winning >= 0;
+    }
+
+    /** Return true iff my table shows the position with KEY to be lost
+     *  for its side to move. */
+    private boolean lost(long key) {
+        int i = (int) key & _mask;
+        return _keys[i] == key && _results[i] == LOST;
+    }
+
+    /** Return the value of my board's position, PLY plies from the root,
+     *  searched DEPTH plies deep with the window ALPHA to BETA (see
+     *  search(int)). */
+    private int search(int depth, int ply, int alpha, int beta) {
+        _nodes += 1;
+        Piece turn = _board.turn();
+        if (depth == 0) {
+            int mobility = _board.mobility(turn);
+            if (mobility == 0) {
+                return -(WIN - ply);
+            }
+            return mobility - _board.mobility(turn.opponent());
+        }
+        int[] moves = buffer(ply);
+        int n = _board.legalMoves(moves);
+        if (n == 0) {
+            return -(WIN - ply);
+        }
+        int best = -INFTY;
+        for (int j = 0; j < n; j += 1) {
+            _board.makeMove(moves[j]);
+            int value = -search(depth - 1, ply + 1, -beta, -alpha);
+            _board.undo();
+            if (value > best) {
+                best = value;
+                if (ply == 0) {
+                    _bestMove = moves[j];
+                }
+                alpha = Math.max(alpha, value);
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Sort the first N of MOVES into decreasing order of their SCORES,
+     *  permuting SCORES to match. */
+    private static void sort(int[] moves, int[] scores, int n) {
+        for (int j = 1; j < n; j += 1) {
+            int move = moves[j], score = scores[j];
+            int k;
+            for (k = j; k > 0 && scores[k - 1] < score; k -= 1) {
+                moves[k] = moves[k - 1];
+                scores[k] = scores[k - 1];
+            }
+            moves[k] = move;
+            scores[k] = score;
+        }
+    }
+
+    /** Return the score buffer for ply PLY, creating it if needed. */
+    private int[] scoreBuffer(int ply) {
+        if (_scores[ply] == null) {
+            _scores[ply] = new int[_board.maxMoves()];
+        }
+        return _scores[ply];
+    }
+
+    /** Return the move buffer for ply PLY, creating it if needed. */
+    private int[] buffer(int ply) {
+        if (_buffers[ply] == null) {
+            _buffers[ply] = new int[_board.maxMoves()];
+        }
+        return _buffers[ply];
+    }
+
+    /** Return the name of the move with code MOVE in GEOMETRY, or "none"
+     *  if MOVE is 0. */
+    private static String moveName(Geometry geometry, int move) {
+        return move == 0 ? "none" : geometry.moveName(move);
+    }
+
+    /** A magnitude greater than any value. */
+    private static final int INFTY = WIN + 1;
+    /** Table results: none, won for the side to move, or lost. */
+    private static final byte UNKNOWN = 0, WON = 1, LOST = 2;
+    /** Bytes per table entry. */
+    private static final int ENTRY_BYTES = 9;
+    /** Most table entries. */
+    private static final int MAX_ENTRIES = 1 << 30;
+
+    /** The board searched. */
+    private final SizedBoard _board;
+    /** Index mask of the table. */
+    private final int _mask;
+    /** Keys of the positions in the table. */
+    private final long[] _keys;
+    /** Results of the positions in the table, by slot. */
+    private final byte[] _results;
+    /** Move buffers, by ply, created on first use. */
+    private final int[][] _buffers;
+    /** Move-ordering scores, by ply, created on first use. */
+    private final int[][] _scores;
+    /** Move recorded by the last search. */
+    private int _bestMove;
+    /** Positions visited. */
+    private long _nodes;
+}
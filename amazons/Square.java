@@ -46,98 +46,57 @@ final class Square {
      * is Independent of obstables, only checks the direction,
      * none of the contents along the way */
     boolean isQueenMove(Square to) {
-        if (to == null) {
-            return false;
-        }
-        int deltaColumns = this._col - to._col;
-        int deltaRows = this._row - to._row;
-        if (!exists(to.col(), to.row())) {
-            return false;
-        }
-        if (deltaColumns == 0 && deltaRows == 0) {
-            return false;
-        }
-        boolean verticalMove = (deltaColumns == 0) && (deltaRows != 0);
-        boolean horizontalMove = (deltaColumns != 0) && (deltaRows == 0);
-
-        boolean diagonalMove = (Math.abs(deltaColumns) == Math.abs(deltaRows));
-
-        return verticalMove || horizontalMove || diagonalMove;
+        return to != null && DIRECTION[_index][to._index] >= 0;
     }
 
     /** Definitions of direction for queenMove.  DIR[k] = (dcol, drow)
      *  means that to going one step from (col, row) in direction k,
      *  brings us to (col + dcol, row + drow). */
     private static final int[][] DIR = {
-            { 0, 1 }, { 1, 1 }, { 1, 0 }, { 1, -1 },
-            { 0, -1 }, { -1, -1 }, { -1, 0 }, { -1, 1 }
+            { 1, 0 }, { 1, 1 }, { 0, 1 }, { -1, 1 },
+            { -1, 0 }, { -1, -1 }, { 0, -1 }, { 1, -1 }
     };
 
     /** Return the Square that is STEPS>0 squares away from me in direction
      *  DIR, or null if there is no such square.
-     *  DIR = 0 for north, 1 for northeast, 2 for east, etc., up to 7 for west.
+     *  DIR is 0=E, 1=NE, 2=N, 3=NW, 4=W, 5=SW, 6=S, 7=SE (see DIR).
      *  If DIR has another value, return null. Thus, unless the result
      *  is null the resulting square is a queen move away rom me. */
     Square queenMove(int dir, int steps) {
         if (dir < 0 || dir > 7) {
             return null;
+        } else if (steps <= 0) {
+            return steps == 0 ? this : queenMove((dir + 4) % 8, -steps);
         }
-        int col = this._col;
-        int row = this._row;
-        if (dir == 0) {
-            col += steps;
-        } else if (dir == 1) {
-            col += steps;
-            row += steps;
-        } else if (dir == 2) {
-            row += steps;
-        } else if (dir == 3) {
-            col -= steps;
-            row += steps;
-        } else if (dir == 4) {
-            col -= steps;
-        } else if (dir == 5) {
-            col -= steps;
-            row -= steps;
-        } else if (dir == 6) {
-            row -= steps;
-        } else {
-            col += steps;
-            row -= steps;
-        }
-        if (exists(col, row)) {
-            return Square.sq(col, row);
-        }
-        return null;
+        Square[] ray = RAYS[_index][dir];
+        return steps <= ray.length ? ray[steps - 1] : null;
     }
 
     /** Return the direction (an int as defined in the documentation
      *  for queenMove) of the queen move THIS-TO. */
     int direction(Square to) {
         assert isQueenMove(to);
-        int deltaColumns = to._col - this._col;
-        int deltaRows = to._row - this._row;
-        if (deltaColumns > 0) {
-            if (deltaRows < 0) {
-                return 7;
-            }
-            if (deltaRows == 0) {
-                return 0;
-            }
-            return 1;
-        } else if (deltaColumns == 0) {
-            if (deltaRows > 0) {
-                return 2;
-            }
-            return 6;
-        } else {
-            if (deltaRows < 0) {
-                return 5;
-            } else if (deltaRows == 0) {
-                return 4;
-            }
-            return 3;
-        }
+        return DIRECTION[_index][to._index];
+    }
+
+    /** Return the index of the square one step from the square with
+     *  index INDEX in direction DIR, or -1 if that is off the board. */
+    static int neighbor(int index, int dir) {
+        return NEIGHBOR[dir][index];
+    }
+
+    /** Return the low word (indices 0-63) of the set of squares strictly
+     *  between the squares with indices FROM and TO, which must be a
+     *  queen move apart. */
+    static long betweenLo(int from, int to) {
+        return BETWEEN_LO[from * NUM_SQUARES + to];
+    }
+
+    /** Return the high word (indices 64 and up) of the set of squares
+     *  strictly between the squares with indices FROM and TO, which must
+     *  be a queen move apart. */
+    static long betweenHi(int from, int to) {
+        return BETWEEN_HI[from * NUM_SQUARES + to];
     }
 
     @Override
@@ -155,7 +114,7 @@ final class Square {
         if (!exists(row, col)) {
             throw error("row or column out of bounds");
         }
-        return SQUARES[(row * 10) + col];
+        return SQUARES[(row * Board.SIZE) + col];
     }
 
     /** Return the (unique) Square denoting the position with index INDEX. */
@@ -262,17 +221,68 @@ final class Square {
         return Integer.toString(row + 1);
     }
 
+    /** Number of squares. */
+    private static final int NUM_SQUARES = Board.SIZE * Board.SIZE;
+
     /** The cache of all created squares, by index. */
-    private static final Square[] SQUARES =
-            new Square[Board.SIZE * Board.SIZE];
+    private static final Square[] SQUARES = new Square[NUM_SQUARES];
 
     /** SQUARES viewed as a List. */
     private static final List<Square> SQUARE_LIST = Arrays.asList(SQUARES);
 
+    /** RAYS[i][d] holds the squares 1, 2, ... steps from the square with
+     *  index i in direction d, out to the edge of the board. */
+    private static final Square[][][] RAYS = new Square[NUM_SQUARES][8][];
+
+    /** NEIGHBOR[d][i] is the index of the square one step from index i in
+     *  direction d, or -1. */
+    private static final int[][] NEIGHBOR = new int[8][NUM_SQUARES];
+
+    /** DIRECTION[f][t] is the direction of the queen move from index f to
+     *  index t, or -1 if there is none. */
+    private static final byte[][] DIRECTION =
+        new byte[NUM_SQUARES][NUM_SQUARES];
+
+    /** BETWEEN_LO[f * NUM_SQUARES + t] and BETWEEN_HI[...] are the low and
+     *  high words of the set of squares strictly between indices f and t
+     *  (0 if f-t is not a queen move). */
+    private static final long[] BETWEEN_LO =
+        new long[NUM_SQUARES * NUM_SQUARES],
+        BETWEEN_HI = new long[NUM_SQUARES * NUM_SQUARES];
+
     static {
-        for (int i = Board.SIZE * Board.SIZE - 1; i >= 0; i -= 1) {
+        for (int i = NUM_SQUARES - 1; i >= 0; i -= 1) {
             SQUARES[i] = new Square(i);
         }
+        for (byte[] row : DIRECTION) {
+            Arrays.fill(row, (byte) -1);
+        }
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                Square[] ray = new Square[Board.SIZE];
+                int n;
+                long lo, hi;
+                n = 0;
+                lo = hi = 0;
+                int col = SQUARES[i]._col + DIR[dir][0],
+                    row = SQUARES[i]._row + DIR[dir][1];
+                for (; exists(col, row); col += DIR[dir][0],
+                         row += DIR[dir][1]) {
+                    int t = row * Board.SIZE + col;
+                    ray[n++] = SQUARES[t];
+                    DIRECTION[i][t] = (byte) dir;
+                    BETWEEN_LO[i * NUM_SQUARES + t] = lo;
+                    BETWEEN_HI[i * NUM_SQUARES + t] = hi;
+                    if (t < 64) {
+                        lo |= 1L << t;
+                    } else {
+                        hi |= 1L << (t - 64);
+                    }
+                }
+                RAYS[i][dir] = Arrays.copyOf(ray, n);
+                NEIGHBOR[dir][i] = n == 0 ? -1 : ray[0]._index;
+            }
+        }
     }
 
     /** My index position. */
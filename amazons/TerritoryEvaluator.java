@@ -0,0 +1,137 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** An Evaluator that estimates territory.  It computes, for every empty
+ *  square, the fewest queen moves and the fewest king moves in which
+ *  each side could reach it (by breadth-first search over empty
+ *  squares), and credits each square to the side that gets there first.
+ *  Squares both sides reach equally fast go to the side to move.  A
+ *  smaller term rewards amazons with many immediate queen moves.  All
+ *  scratch space is allocated once, so scoring allocates nothing.
+ *  @author Netra Sathe
+ */
+class TerritoryEvaluator implements Evaluator {
+
+    @Override
+    public int score(Board board) {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            _empty[i] = board.get(Square.sq(i)) == EMPTY;
+        }
+        int numWhite = board.amazons(WHITE, _white);
+        int numBlack = board.amazons(BLACK, _black);
+        int tempo = board.turn() == WHITE ? TIE : -TIE;
+
+        distances(_white, numWhite, _whiteDist, true);
+        distances(_black, numBlack, _blackDist, true);
+        int queen = territory(tempo);
+        distances(_white, numWhite, _whiteDist, false);
+        distances(_black, numBlack, _blackDist, false);
+        int king = territory(tempo);
+        int mobility = mobility(_white, numWhite) - mobility(_black, numBlack);
+
+        return QUEEN_WEIGHT * queen + KING_WEIGHT * king
+            + MOBILITY_WEIGHT * mobility;
+    }
+
+    @Override
+    public Evaluator newInstance() {
+        return new TerritoryEvaluator();
+    }
+
+    /** Fill DIST with the number of moves needed to reach each square
+     *  from the first N squares in SOURCES, moving like a queen if QUEEN
+     *  and like a king otherwise, and passing only over empty squares.
+     *  Unreachable squares get UNREACHED. */
+    private void distances(int[] sources, int n, byte[] dist,
+                           boolean queen) {
+        Arrays.fill(dist, UNREACHED);
+        int head, tail;
+        head = tail = 0;
+        for (int k = 0; k < n; k += 1) {
+            dist[sources[k]] = 0;
+            _queue[tail++] = sources[k];
+        }
+        while (head < tail) {
+            int sq = _queue[head++];
+            byte d = (byte) (dist[sq] + 1);
+            for (int dir = 0; dir < BitBoard.DIRS; dir += 1) {
+                int to = Square.neighbor(sq, dir);
+                while (to >= 0 && _empty[to] && dist[to] >= d) {
+                    if (dist[to] > d) {
+                        dist[to] = d;
+                        _queue[tail++] = to;
+                    }
+                    if (!queen) {
+                        break;
+                    }
+                    to = Square.neighbor(to, dir);
+                }
+            }
+        }
+    }
+
+    /** Return the territory balance given by _whiteDist and _blackDist:
+     *  OWNED for each empty square WHITE reaches first, -OWNED for each
+     *  BLACK reaches first, and TEMPO for each both reach together. */
+    private int territory(int tempo) {
+        int total = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            if (_empty[i]) {
+                int w = _whiteDist[i], b = _blackDist[i];
+                if (w < b) {
+                    total += OWNED;
+                } else if (b < w) {
+                    total -= OWNED;
+                } else if (w != UNREACHED) {
+                    total += tempo;
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Return the total number of queen moves available to the first N
+     *  amazons in SQUARES. */
+    private int mobility(int[] squares, int n) {
+        int total = 0;
+        for (int k = 0; k < n; k += 1) {
+            for (int dir = 0; dir < BitBoard.DIRS; dir += 1) {
+                int to = Square.neighbor(squares[k], dir);
+                while (to >= 0 && _empty[to]) {
+                    total += 1;
+                    to = Square.neighbor(to, dir);
+                }
+            }
+        }
+        return total;
+    }
+
+    /** Number of squares on the board. */
+    private static final int NUM_SQUARES = Board.SIZE * Board.SIZE;
+    /** Distance of an unreachable square. */
+    private static final byte UNREACHED = Byte.MAX_VALUE;
+    /** Value of a square one side reaches first. */
+    private static final int OWNED = 8;
+    /** Value, to the side to move, of a square both reach together. */
+    private static final int TIE = 1;
+    /** Weight of queen-distance territory. */
+    private static final int QUEEN_WEIGHT = 4;
+    /** Weight of king-distance territory. */
+    private static final int KING_WEIGHT = 2;
+    /** Weight of the mobility difference. */
+    private static final int MOBILITY_WEIGHT = 3;
+
+    /** _empty[i] is true iff the square with index i is empty. */
+    private final boolean[] _empty = new boolean[NUM_SQUARES];
+    /** Squares of the white and black amazons. */
+    private final int[] _white = new int[NUM_SQUARES],
+        _black = new int[NUM_SQUARES];
+    /** Distances from the white and black amazons. */
+    private final byte[] _whiteDist = new byte[NUM_SQUARES],
+        _blackDist = new byte[NUM_SQUARES];
+    /** Breadth-first search queue. */
+    private final int[] _queue = new int[NUM_SQUARES];
+}
@@ -0,0 +1,159 @@
+package amazons;
+
+import java.util.Arrays;
+
+/** A fixed-size transposition table for the AI's alpha-beta search,
+ *  indexed by Board.hash().  The table is an array of two-entry
+ *  buckets whose number is a power of two.  The first entry of a bucket
+ *  is depth-preferred: it is only replaced by a search at least as
+ *  deep, or by any search once it is left over from an earlier move.
+ *  The second entry is always replaced.
+ *
+ *  Each entry records a score, whether that score is exact or a lower
+ *  or upper bound, the depth searched, and the best move found.  These
+ *  are packed into a single long, which probe returns (0 meaning
+ *  "absent") and which the static methods score, depth, bound, and move
+ *  take apart, so probes allocate nothing.
+ *
+ *  The table may be shared by several search threads without locking.
+ *  Each slot stores its key XORed with its entry, so an entry torn by
+ *  concurrent writes fails to match its key and reads as absent; a
+ *  racing write can at worst lose an entry.
+ *  @author Netra Sathe
+ */
+final class TranspositionTable {
+
+    /** Bound type of an exact score. */
+    static final int EXACT = 1;
+    /** Bound type of a score that is a lower bound on the true value. */
+    static final int LOWER = 2;
+    /** Bound type of a score that is an upper bound on the true value. */
+    static final int UPPER = 3;
+
+    /** A table occupying at most MEGABYTES megabytes (and at least one
+     *  bucket). */
+    TranspositionTable(int megabytes) {
+        long bytes = (long) megabytes << 20;
+        int buckets = 1;
+        while ((long) buckets * 2 * BUCKET_BYTES <= bytes
+               && buckets < MAX_BUCKETS) {
+            buckets *= 2;
+        }
+        _mask = buckets - 1;
+        _keys = new long[2 * buckets];
+        _data = new long[2 * buckets];
+    }
+
+    /** Start a new search, so that entries from previous searches become
+     *  replaceable. */
+    void newSearch() {
+        _age = (_age + 1) & AGE_MASK;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /** Return the packed entry for KEY, or 0 if there is none. */
+    long probe(long key) {
+        int i = index(key);
+        long data = _data[i];
+        if (data != 0 && (_keys[i] ^ data) == key) {
+            return data;
+        }
+        data = _data[i + 1];
+        if (data != 0 && (_keys[i + 1] ^ data) == key) {
+            return data;
+        }
+        return 0;
+    }
+
+    /** Record that searching the position with KEY to DEPTH produced
+     *  SCORE, which is of type BOUND (EXACT, LOWER, or UPPER), with the
+     *  move whose code is BEST (0 if none) as the best move. */
+    void store(long key, int depth, int score, int bound, int best) {
+        int i = index(key);
+        long data = (score & SCORE_MASK)
+            | (long) Math.min(depth, DEPTH_MASK) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (long) _age << AGE_SHIFT
+            | (long) best << MOVE_SHIFT;
+        long old = _data[i];
+        if (old == 0 || (_keys[i] ^ old) == key || depth >= depth(old)
+            || age(old) != _age) {
+            _keys[i] = key ^ data;
+            _data[i] = data;
+        } else {
+            _keys[i + 1] = key ^ data;
+            _data[i + 1] = data;
+        }
+    }
+
+    /** Return the score recorded in ENTRY. */
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Return the search depth recorded in ENTRY. */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & DEPTH_MASK;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) recorded in
+     *  ENTRY. */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & BOUND_MASK;
+    }
+
+    /** Return the code of the best move recorded in ENTRY, or 0 if
+     *  none. */
+    static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & MOVE_MASK;
+    }
+
+    /** Return the search age recorded in ENTRY. */
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & AGE_MASK;
+    }
+
+    /** Return the index of the first entry of KEY's bucket. */
+    private int index(long key) {
+        return (int) (key & _mask) << 1;
+    }
+
+    /** Bytes used by one bucket (two keys and two entries). */
+    private static final int BUCKET_BYTES = 32;
+    /** Largest number of buckets (keeps array lengths within range). */
+    private static final int MAX_BUCKETS = 1 << 29;
+
+    /** Layout of a packed entry: score in bits 0-31, then depth, bound
+     *  type, age, and move code. */
+    private static final long SCORE_MASK = 0xffffffffL;
+    /** Position of the depth field. */
+    private static final int DEPTH_SHIFT = 32;
+    /** Mask of the depth field. */
+    private static final int DEPTH_MASK = 0x3f;
+    /** Position of the bound field. */
+    private static final int BOUND_SHIFT = 38;
+    /** Mask of the bound field. */
+    private static final int BOUND_MASK = 0x3;
+    /** Position of the age field. */
+    private static final int AGE_SHIFT = 40;
+    /** Mask of the age field. */
+    private static final int AGE_MASK = 0x7;
+    /** Position of the move field. */
+    private static final int MOVE_SHIFT = 43;
+    /** Mask of the move field. */
+    private static final int MOVE_MASK = (1 << 21) - 1;
+
+    /** Mask selecting a bucket from a key. */
+    private final int _mask;
+    /** Keys of the entries XORed with the entries, two per bucket. */
+    private final long[] _keys;
+    /** Packed entries, parallel to _keys. */
+    private final long[] _data;
+    /** Age of the current search. */
+    private volatile int _age;
+}
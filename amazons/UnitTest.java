@@ -1,5 +1,13 @@
 package amazons;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.Test;
 
 import static amazons.Piece.*;
@@ -41,6 +49,20 @@ public class UnitTest {
         assertTrue(Square.sq(7, 9).isQueenMove(Square.sq(0, 2)));
     }
 
+    /** Tests the precomputed ray and direction tables in Square. */
+    @Test
+    public void testRayTables() {
+        Square a1 = Square.sq("a1");
+        assertEquals(1, a1.direction(Square.sq("j10")));
+        assertSame(Square.sq("d4"), a1.queenMove(1, 3));
+        assertNull(a1.queenMove(5, 1));
+        assertEquals(-1, Square.neighbor(a1.index(), 4));
+        assertEquals(Square.sq("a2").index(), Square.neighbor(0, 2));
+        long between = Square.betweenLo(0, Square.sq("a4").index());
+        assertEquals((1L << Square.sq("a2").index())
+                     | (1L << Square.sq("a3").index()), between);
+    }
+
     /** Tests toString for initial board state and a smiling board state. :) */
     @Test
     public void testToString() {
@@ -50,6 +72,149 @@ public class UnitTest {
         assertEquals(SMILE, b.toString());
     }
 
+    /** Tests that the bitboard move generator finds every opening move
+     *  and agrees with isLegal. */
+    @Test
+    public void testInitialLegalMoves() {
+        Board b = new Board();
+        int count = 0;
+        for (Move m : Utils.iterable(b.legalMoves())) {
+            assertTrue(b.isLegal(m));
+            count += 1;
+        }
+        assertEquals(2176, count);
+        assertEquals(2176, b.legalMoves(new int[Board.MAX_MOVES]));
+        assertFalse(b.isUnblockedMove(Square.sq("d1"), Square.sq("d10"),
+                null));
+        assertTrue(b.isUnblockedMove(Square.sq("d1"), Square.sq("d10"),
+                Square.sq("d10")));
+    }
+
+    /** Tests that winner() notices when the side to move is walled in,
+     *  and forgets its answer when the board changes. */
+    @Test
+    public void testWinner() {
+        Board b = new Board();
+        assertNull(b.winner());
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            if (b.get(Square.sq(i)) == EMPTY) {
+                b.put(SPEAR, Square.sq(i));
+            }
+        }
+        assertEquals(BLACK, b.winner());
+        b.put(EMPTY, Square.sq("d2"));
+        assertNull(b.winner());
+        assertFalse(b.hasMove(BLACK));
+    }
+
+    /** Tests that the Zobrist hash is restored by undo and depends only
+     *  on the position, not on the order of moves reaching it. */
+    @Test
+    public void testHash() {
+        Board b = new Board();
+        long initial = b.hash();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        b.makeMove(Move.mv("a7-b7(c7)"));
+        b.makeMove(Move.mv("g1-g6(h6)"));
+        long transposed = b.hash();
+        b.undo();
+        b.undo();
+        b.undo();
+        assertEquals(initial, b.hash());
+        b.makeMove(Move.mv("g1-g6(h6)"));
+        b.makeMove(Move.mv("a7-b7(c7)"));
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        assertEquals(transposed, b.hash());
+        assertNotEquals(initial, transposed);
+    }
+
+    /** Tests that a copied board keeps its own undo history. */
+    @Test
+    public void testCopyIsIndependent() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        Board c = new Board(b);
+        c.makeMove(Move.mv("a7-b7(c7)"));
+        c.undo();
+        c.undo();
+        assertEquals(INIT_BOARD_STATE, c.toString());
+        assertEquals(1, b.numMoves());
+        b.undo();
+        assertEquals(INIT_BOARD_STATE, b.toString());
+    }
+
+    /** Tests copying a position over a board with a different one. */
+    @Test
+    public void testCopyInto() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        b.makeMove(Move.mv("a7-b7(c7)"));
+        Board c = new Board();
+        c.makeMove(Move.mv("g1-g6(h6)"));
+        c.copy(b);
+        assertEquals(b.toString(), c.toString());
+        assertEquals(b.hash(), c.hash());
+        assertEquals(WHITE, c.turn());
+        b.makeMove(Move.mv("g1-g6(h6)"));
+        assertNotEquals(b.hash(), c.hash());
+        c.undo();
+        c.undo();
+        c.undo();
+        assertEquals(new Board().hash(), c.hash());
+        assertEquals(INIT_BOARD_STATE, c.toString());
+    }
+
+    /** Tests that the territory evaluation treats the colors alike. */
+    @Test
+    public void testTerritorySymmetry() {
+        Evaluator eval = new TerritoryEvaluator();
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        int black = eval.score(b);
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            Square s = Square.sq(i);
+            if (b.get(s) == WHITE || b.get(s) == BLACK) {
+                b.put(b.get(s).opponent(), s);
+            }
+        }
+        b.change();
+        assertEquals(-black, eval.score(b));
+        assertTrue(eval.score(new Board()) > 0);
+    }
+
+    /** Tests that moves are unique and survive packing into codes. */
+    @Test
+    public void testMoveCodes() {
+        Move m = Move.mv("j10-a1(j10)");
+        assertSame(m, Move.mv(Square.sq("j10"), Square.sq("a1"),
+                              Square.sq("j10")));
+        assertSame(m, Move.mv(m.code()));
+        assertEquals(99, Move.from(m.code()));
+        assertEquals(0, Move.to(m.code()));
+        assertEquals(99, Move.spear(m.code()));
+        assertEquals("j10-a1(j10)", m.toString());
+        assertNull(Move.mv("a1-b3(b4)"));
+    }
+
+    /** Tests that a move whose reply fails low with a bound equal to the
+     *  best value so far does not replace the best move.  d3-c2(c1) is
+     *  white's only winning move, but black's first reply to several
+     *  losing moves loses too, so their bounds tie the winning value. */
+    @Test
+    public void testFailLowTie() {
+        Board b = new Board();
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        for (String s : new String[] {
+                "a3", "a2", "b2", "c2", "d2", "a1", "b1", "c1" }) {
+            b.put(EMPTY, Square.sq(s));
+        }
+        b.put(WHITE, Square.sq("d3"));
+        b.put(BLACK, Square.sq("d1"));
+        assertEquals(Move.mv("d3-c2(c1)"), new AI(1).findMove(b, 3));
+    }
+
     private void makeSmile(Board b) {
         b.put(EMPTY, Square.sq(0, 3));
         b.put(EMPTY, Square.sq(0, 6));
@@ -102,4 +267,638 @@ public class UnitTest {
                    + "   - - - - - - - - - -\n"
                    + "   - - - - - - - - - -\n";
 
+    /** Tests the perft leaf counts from the initial position and that
+     *  divide sums to count. */
+    @Test
+    public void testPerft() {
+        Perft perft = new Perft(new Board());
+        assertEquals(1, perft.count(0));
+        assertEquals(2176, perft.count(1));
+        assertEquals(4307152, perft.count(2));
+        long total = 0;
+        for (long n : perft.divide(2).values()) {
+            total += n;
+        }
+        assertEquals(4307152, total);
+    }
+
+    /** Tests that threaded, cached perft counts agree with the serial
+     *  ones, including on a second, cache-warm run. */
+    @Test
+    public void testParallelCachedPerft() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        Perft single = new Perft(b);
+        Perft parallel = new Perft(b);
+        parallel.setThreads(4);
+        parallel.setCache(1);
+        assertEquals(single.count(2), parallel.count(2));
+        assertEquals(single.count(2), parallel.count(2));
+        assertEquals(single.divide(2), parallel.divide(2));
+    }
+
+    /** Tests that positions survive a round trip through their text form. */
+    @Test
+    public void testPositionText() {
+        String initial = "3B2B3/10/10/B8B/10/10/W8W/10/10/3W2W3 w";
+        assertEquals(initial, Position.toText(new Board()));
+        Board b = Position.parse(initial);
+        assertEquals(new Board().hash(), b.hash());
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        Board c = Position.parse(Position.toText(b));
+        assertEquals(b.hash(), c.hash());
+        assertEquals(BLACK, c.turn());
+        assertEquals(1, c.numMoves());
+        try {
+            Position.parse("3B2B3/10/10/B8B/10/10/W8W/10/10/3W2W2 w");
+            fail("short row accepted");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    /** Tests the binary position encoding, its ordering, and the
+     *  canonical form of mirrored positions. */
+    @Test
+    public void testPositionEncoding() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        b.makeMove(Move.mv("a7-b8(b9)"));
+        byte[] data = Position.encode(b);
+        assertEquals(Position.BYTES, data.length);
+        Board c = Position.decode(data);
+        assertEquals(b.hash(), c.hash());
+        assertEquals(WHITE, c.turn());
+        assertEquals(0, Position.compare(data, 0, Position.encode(c), 0));
+
+        Board mirror = new Board();
+        mirror.makeMove(Move.mv("g1-g7(d7)"));
+        mirror.makeMove(Move.mv("j7-i8(i9)"));
+        assertTrue(Position.compare(data, 0, Position.encode(mirror), 0)
+                   != 0);
+        assertArrayEquals(Position.canonical(b), Position.canonical(mirror));
+    }
+
+    /** Tests writing and reading an opening book, and that the AI plays
+     *  seeded book moves without searching. */
+    @Test
+    public void testOpeningBook() throws IOException {
+        Board b = new Board();
+        Move first = Move.mv("d1-d7(g7)");
+        Move second = Move.mv("g1-g7(d7)");
+        b.makeMove(first);
+        long after = b.hash();
+        long start = new Board().hash();
+
+        OpeningBook.Builder builder = new OpeningBook.Builder();
+        builder.add(after, Move.mv("a7-b8(b9)").code(), 1);
+        builder.add(start, second.code(), 1);
+        builder.add(start, first.code(), 2);
+        builder.add(start, first.code(), 1);
+        File file = File.createTempFile("book", ".bin");
+        file.deleteOnExit();
+        builder.write(file.getPath());
+
+        OpeningBook book = new OpeningBook(file.getPath());
+        assertEquals(3, book.size());
+        assertEquals(2, book.count(start));
+        assertEquals(first.code(), book.bestMove(start));
+        assertEquals(0, book.bestMove(start ^ 1));
+        assertEquals(0, book.move(start ^ 1, new Random()));
+
+        AI ai = new AI(1);
+        ai.setBook(book);
+        Move m = ai.findMove(new Board());
+        assertTrue(m == first || m == second);
+        assertEquals(0, ai.nodes());
+
+        AI other = new AI(1);
+        other.setBook(book);
+        ai.setSeed(7);
+        other.setSeed(7);
+        for (int i = 0; i < 10; i += 1) {
+            assertEquals(ai.findMove(new Board()),
+                         other.findMove(new Board()));
+        }
+    }
+
+    /** Tests the region analysis and bounds of partitioned endgames. */
+    @Test
+    public void testEndgameRegions() {
+        String walls = "/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS"
+            + "/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/";
+        Endgame endgame = new Endgame();
+        Board b = Position.parse("W2SSSSSSS" + walls + "B1SSSSSSSS b");
+        endgame.analyze(b);
+        assertTrue(endgame.partitioned());
+        assertEquals(2, endgame.lowerBound(WHITE));
+        assertEquals(2, endgame.upperBound(WHITE));
+        assertEquals(1, endgame.lowerBound(BLACK));
+        assertEquals(WHITE, endgame.winner(BLACK));
+        assertEquals(WHITE, endgame.winner(WHITE));
+
+        b = Position.parse("W1SSSSSSSS" + walls + "B1SSSSSSSS w");
+        endgame.analyze(b);
+        assertEquals(BLACK, endgame.winner(WHITE));
+
+        b = Position.parse("W2SSSSSSS" + walls + "B1SSSSSSSS w");
+        endgame.analyze(b);
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = endgame.restrict(moves, b.legalMoves(moves), WHITE);
+        assertEquals(1, n);
+        b.makeMove(moves[0]);
+        endgame.analyze(b);
+        assertEquals(1, endgame.lowerBound(WHITE));
+
+        endgame.analyze(new Board());
+        assertFalse(endgame.partitioned());
+        assertNull(endgame.winner(WHITE));
+    }
+
+    /** Tests that the AI keeps the larger territory in a partitioned
+     *  endgame. */
+    @Test
+    public void testEndgameSearch() {
+        String walls = "/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS"
+            + "/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/";
+        Board b = Position.parse("W2SSSSSSS" + walls + "B1SSSSSSSS w");
+        AI ai = new AI(1);
+        Move m = ai.findMove(b, 4);
+        b.makeMove(m);
+        Endgame endgame = new Endgame();
+        endgame.analyze(b);
+        assertEquals(1, endgame.lowerBound(WHITE));
+    }
+
+    /** Tests that searches record beta cutoffs and first-move cutoffs. */
+    @Test
+    public void testCutoffStatistics() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        AI ai = new AI(1);
+        Move m = ai.findMove(b, 2);
+        assertTrue(b.isLegal(m));
+        SearchStats stats = ai.stats();
+        assertTrue(stats.cutoffs() > 0);
+        assertTrue(stats.firstMoveCutoffs() > 0);
+        assertTrue(stats.firstMoveCutoffs() <= stats.cutoffs());
+    }
+
+    /** Tests the statistics, log line, and monitor totals of a search. */
+    @Test
+    public void testSearchStats() {
+        Board b = new Board();
+        AI ai = new AI(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ai.setStatsLog(new PrintStream(out, true));
+        SearchMonitor monitor = new SearchMonitor();
+        ai.setMonitor(monitor);
+        ai.findMove(b, 2);
+        SearchStats stats = ai.stats();
+        assertEquals(2, stats.depth());
+        assertTrue(stats.iterationMillis(2) >= 0);
+        assertEquals(stats.nodes(), ai.nodes());
+        assertTrue(stats.evaluations() > 0);
+        assertTrue(stats.evaluations() <= stats.nodes());
+        assertTrue(stats.tableProbes() > 0);
+        assertTrue(stats.branchingFactor() > 1.0);
+        assertEquals(1, monitor.getSearches());
+        assertEquals(stats.nodes(), monitor.getTotalNodes());
+        String line = out.toString().trim();
+        assertTrue(line.contains("depth=2 nodes=" + stats.nodes()));
+        assertEquals(1, line.split("\n").length);
+    }
+
+    /** Tests that MCTSPlayer plays legal, repeatable moves, reuses its
+     *  tree, and finds the winning move with several threads. */
+    @Test
+    public void testMCTSPlayer() {
+        Board b = new Board();
+        MCTSPlayer player = new MCTSPlayer();
+        player.setBudget(300, 0);
+        player.setSeed(1);
+        Move m = player.findMove(b);
+        assertTrue(b.isLegal(m));
+        assertEquals(300, player.iterations());
+        MCTSPlayer again = new MCTSPlayer();
+        again.setBudget(300, 0);
+        again.setSeed(1);
+        assertSame(m, again.findMove(b));
+
+        b.makeMove(m);
+        int kept = player.visits();
+        assertTrue(kept > 0);
+        Move reply = player.findMove(b);
+        assertTrue(b.isLegal(reply));
+
+        b = Position.parse("B1W1SSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS"
+                           + "/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS/SSSSSSSSSS"
+                           + "/SSSSSSSSSS/SSSSSSSSSS w");
+        player.setThreads(2);
+        m = player.findMove(b);
+        assertTrue(b.isLegal(m));
+        b.makeMove(m);
+        assertEquals(WHITE, b.winner());
+    }
+
+    /** Tests that a Playout game is legal on Board and that Playouts
+     *  store, load, and replay positions. */
+    @Test
+    public void testPlayout() {
+        Playout playout = new Playout(7);
+        Piece winner = playout.play(Integer.MAX_VALUE);
+        assertNotNull(winner);
+        Board b = new Board();
+        for (int k = 0; k < playout.plies(); k += 1) {
+            Move m = Move.mv(playout.move(k));
+            assertTrue(b.isLegal(m));
+            b.makeMove(m);
+        }
+        assertEquals(winner, b.winner());
+        Board stored = new Board();
+        playout.store(stored);
+        assertEquals(b.toString(), stored.toString());
+        assertEquals(b.turn(), stored.turn());
+
+        Playout again = new Playout(7);
+        again.load(new Board());
+        assertEquals(winner, again.play(Integer.MAX_VALUE));
+        assertEquals(playout.plies(), again.plies());
+        playout.load(b);
+        assertEquals(0, playout.randomMove());
+        assertEquals(0, playout.mobility());
+    }
+
+    /** Tests Geometry move codes at the standard size and Playout games
+     *  at other sizes. */
+    @Test
+    public void testGeometry() {
+        Geometry standard = Geometry.of(Board.SIZE);
+        assertSame(standard, Geometry.of(Board.SIZE));
+        Move m = Move.mv("d1-d7(g7)");
+        assertEquals(m.code(), standard.code(3, 63, 66));
+        assertEquals("d1-d7(g7)", standard.moveName(m.code()));
+        Board stored = new Board();
+        new Playout(standard, 1).store(stored);
+        assertEquals(INIT_BOARD_STATE, stored.toString());
+
+        for (int size : new int[] { 6, 8, 12, 20 }) {
+            Geometry geometry = Geometry.of(size);
+            Playout playout = new Playout(geometry, size);
+            assertEquals(EMPTY, playout.get(geometry.index(0, 0)));
+            assertEquals(BLACK,
+                         playout.get(geometry.index(0, size - 1
+                                                    - (size - 1) / 3)));
+            Piece winner = playout.play(Integer.MAX_VALUE);
+            assertNotNull(winner);
+            assertEquals(0, playout.mobility());
+            assertTrue(playout.plies() <= size * size - 8);
+            int last = playout.move(playout.plies() - 1);
+            assertEquals(SPEAR, playout.get(geometry.spear(last)));
+        }
+    }
+
+    /** Tests the move generation, make, and undo of SizedBoards against
+     *  a brute-force count on a 6x6 board and against Board at the
+     *  standard size. */
+    @Test
+    public void testSizedBoard() {
+        SizedBoard b = new SizedBoard(6);
+        Piece[] contents = new Piece[36];
+        for (int sq = 0; sq < 36; sq += 1) {
+            contents[sq] = b.get(sq);
+        }
+        assertEquals(bruteCount(contents, 6, WHITE, 1), b.perft(1));
+        assertEquals(bruteCount(contents, 6, WHITE, 2), b.perft(2));
+        assertEquals(new Perft(new Board()).count(2),
+                     new SizedBoard(Board.SIZE).perft(2));
+
+        Random random = new Random(7);
+        int[] moves = new int[b.maxMoves()];
+        while (b.winner() == null) {
+            int n = b.legalMoves(moves);
+            for (int i = 0; i < n; i += 1) {
+                assertTrue(b.isLegal(moves[i]));
+            }
+            String text = Position.toText(b);
+            long key = b.hash();
+            b.makeMove(moves[random.nextInt(n)]);
+            assertEquals(Position.parseSized(Position.toText(b)).hash(),
+                         b.hash());
+            b.undo();
+            assertEquals(text, Position.toText(b));
+            assertEquals(key, b.hash());
+            b.makeMove(moves[random.nextInt(n)]);
+        }
+        assertTrue(b.numMoves() <= 28);
+        assertEquals(0, b.legalMoves(moves));
+    }
+
+    /** Tests the solver against plain minimax on late 6x6 positions and
+     *  on the whole 4x4 game, and the depth-limited search on a forced
+     *  win. */
+    @Test
+    public void testSolver() {
+        Random random = new Random(11);
+        for (int trial = 0; trial < 5; trial += 1) {
+            SizedBoard b = new SizedBoard(6);
+            int[] moves = new int[b.maxMoves()];
+            for (int ply = 0; ply < 20 && b.winner() == null; ply += 1) {
+                b.makeMove(moves[random.nextInt(b.legalMoves(moves))]);
+            }
+            String text = Position.toText(b);
+            Solver solver = new Solver(b, 1);
+            Piece winner = solver.solve();
+            assertEquals(text, Position.toText(b));
+            assertEquals(bruteWins(b) ? b.turn() : b.turn().opponent(),
+                         winner);
+            if (winner == b.turn()) {
+                b.makeMove(solver.bestMove());
+                assertFalse(bruteWins(b));
+            }
+        }
+        assertEquals(BLACK, new Solver(new SizedBoard(4)).solve());
+
+        SizedBoard b = Position.parseSized("SSSSSS/SSSSSS/SSSSSS/SSSSSS"
+                                           + "/SSSSSS/B1W1SS w");
+        Solver solver = new Solver(b);
+        assertEquals(Solver.WIN - 1, solver.search(3));
+        b.makeMove(solver.bestMove());
+        assertEquals(WHITE, b.winner());
+    }
+
+    /** Return true iff the side to move on BOARD wins with perfect play,
+     *  found by searching every line. */
+    private static boolean bruteWins(SizedBoard board) {
+        int[] moves = new int[board.maxMoves()];
+        int n = board.legalMoves(moves);
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            boolean lost = !bruteWins(board);
+            board.undo();
+            if (lost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of positions DEPTH plies after the position on
+     *  a SIZE x SIZE board with CONTENTS (by square index) and SIDE to
+     *  move, found by trying every triple of squares as a move. */
+    private static long bruteCount(Piece[] contents, int size, Piece side,
+                                   int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long total = 0;
+        int squares = size * size;
+        for (int from = 0; from < squares; from += 1) {
+            if (contents[from] != side) {
+                continue;
+            }
+            for (int to = 0; to < squares; to += 1) {
+                if (!bruteClear(contents, size, from, to)) {
+                    continue;
+                }
+                contents[from] = EMPTY;
+                for (int spear = 0; spear < squares; spear += 1) {
+                    if (!bruteClear(contents, size, to, spear)) {
+                        continue;
+                    }
+                    contents[to] = side;
+                    contents[spear] = SPEAR;
+                    total += depth == 1 ? 1
+                        : bruteCount(contents, size, side.opponent(),
+                                     depth - 1);
+                    contents[spear] = EMPTY;
+                    contents[to] = EMPTY;
+                }
+                contents[from] = side;
+            }
+        }
+        return total;
+    }
+
+    /** Return true iff TO is a queen move from FROM on a SIZE x SIZE
+     *  board with CONTENTS, with TO and every square between empty. */
+    private static boolean bruteClear(Piece[] contents, int size, int from,
+                                      int to) {
+        int dc = to % size - from % size, dr = to / size - from / size;
+        if (from == to || dc != 0 && dr != 0
+            && Math.abs(dc) != Math.abs(dr)) {
+            return false;
+        }
+        int steps = Math.max(Math.abs(dc), Math.abs(dr));
+        int step = Integer.signum(dr) * size + Integer.signum(dc);
+        for (int k = 1; k <= steps; k += 1) {
+            if (contents[from + k * step] != EMPTY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Tests that an AI that ponders searches the position after its
+     *  guessed reply, and notices whether the guess was right. */
+    @Test
+    public void testPonder() {
+        AI ai = new AI();
+        ai.setPonder(true);
+        Board b = new Board();
+        b.makeMove(ai.findMove(b, 2));
+        Move reply = ai.ponderMove();
+        assertNotNull(reply);
+        assertTrue(b.isLegal(reply));
+        b.makeMove(reply);
+        Move m = ai.findMove(b, 2);
+        assertTrue(b.isLegal(m));
+        assertEquals(1, ai.ponderHits());
+        b.makeMove(m);
+        reply = ai.ponderMove();
+        for (Move other : Utils.iterable(b.legalMoves())) {
+            if (other != reply) {
+                b.makeMove(other);
+                break;
+            }
+        }
+        assertTrue(b.isLegal(ai.findMove(b, 2)));
+        assertEquals(1, ai.ponderHits());
+        ai.stop();
+        assertNull(ai.ponderMove());
+    }
+
+    /** Tests that undo restores the hash and winner, and does nothing
+     *  when there is no move to undo. */
+    @Test
+    public void testUndoLog() {
+        Board b = new Board();
+        b.undo();
+        assertEquals(INIT_BOARD_STATE, b.toString());
+        assertEquals(0, b.numMoves());
+        int[] moves = new int[Board.MAX_MOVES];
+        long[] hashes = new long[Board.MAX_PLIES];
+        int[] counts = new int[Board.MAX_PLIES];
+        Random random = new Random(5);
+        int plies;
+        for (plies = 0; b.winner() == null; plies += 1) {
+            hashes[plies] = b.hash();
+            counts[plies] = b.legalMoves(moves);
+            b.makeMove(moves[random.nextInt(counts[plies])]);
+        }
+        while (plies > 0) {
+            plies -= 1;
+            b.undo();
+            assertEquals(hashes[plies], b.hash());
+            assertNull(b.winner());
+            assertEquals(counts[plies], b.legalMoves(moves));
+        }
+        assertEquals(INIT_BOARD_STATE, b.toString());
+        assertEquals(0, b.numMoves());
+    }
+
+    /** Tests that queen moves and spear throws together generate
+     *  exactly the legal moves, and that split search finds a move. */
+    @Test
+    public void testSplitMoveGeneration() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d7(g7)"));
+        int[] all = new int[Board.MAX_MOVES];
+        int n = b.legalMoves(all);
+        int[] queens = new int[Board.MAX_MOVES];
+        int[] spears = new int[Board.MAX_MOVES];
+        Set<Integer> split = new HashSet<>();
+        int numQueens = b.queenMoves(b.turn(), queens);
+        for (int q = 0; q < numQueens; q += 1) {
+            int k = b.spearThrows(Move.from(queens[q]), Move.to(queens[q]),
+                                  spears);
+            for (int i = 0; i < k; i += 1) {
+                split.add(spears[i]);
+            }
+        }
+        assertEquals(n, split.size());
+        for (int i = 0; i < n; i += 1) {
+            assertTrue(split.contains(all[i]));
+        }
+
+        AI ai = new AI(1);
+        ai.setSplitMoves(true);
+        assertTrue(b.isLegal(ai.findMove(b, 2)));
+    }
+
+    /** Tests that split mode finds a move when every queen move but the
+     *  filling one lies within a territory. */
+    @Test
+    public void testSplitEndgame() {
+        Board b = Position.parse("B9/10/10/10/SSSSSSSSSS/SSSSSSSSSS"
+                                 + "/SSSSSSSSSS/10/10/W9 w");
+        for (int depth = 1; depth <= 3; depth += 1) {
+            AI ai = new AI(1);
+            ai.setSplitMoves(true);
+            Move m = ai.findMove(b, depth);
+            assertNotNull(m);
+            assertTrue(b.isLegal(m));
+        }
+    }
+
+    /** Tests that a parallel AI's helper threads follow its number of
+     *  threads and end when it is stopped. */
+    @Test
+    public void testHelperThreads() throws InterruptedException {
+        String name = "amazons-search-helper";
+        int before = helperThreads(name);
+        Board b = new Board();
+        AI ai = new AI(1);
+        ai.setThreads(3);
+        assertTrue(b.isLegal(ai.findMove(b, 2)));
+        assertEquals(before + 2, helperThreads(name));
+        ai.setThreads(4);
+        assertTrue(b.isLegal(ai.findMove(b, 2)));
+        ai.stop();
+        for (int i = 0; i < 500 && helperThreads(name) > before; i += 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(before, helperThreads(name));
+    }
+
+    /** Tests that an MCTSPlayer's helper threads follow its number of
+     *  threads and end when it is stopped. */
+    @Test
+    public void testMCTSHelperThreads() throws InterruptedException {
+        String name = "amazons-mcts-helper";
+        int before = helperThreads(name);
+        Board b = new Board();
+        MCTSPlayer player = new MCTSPlayer();
+        player.setBudget(100, 0);
+        player.setThreads(3);
+        assertTrue(b.isLegal(player.findMove(b)));
+        assertEquals(before + 2, helperThreads(name));
+        player.setThreads(4);
+        assertTrue(b.isLegal(player.findMove(b)));
+        player.stop();
+        for (int i = 0; i < 500 && helperThreads(name) > before; i += 1) {
+            Thread.sleep(10);
+        }
+        assertEquals(before, helperThreads(name));
+    }
+
+    /** Tests that a search under a short time limit returns a legal move
+     *  soon after the limit, even when its first iteration would take
+     *  far longer. */
+    @Test
+    public void testTimeControl() {
+        Board b = new Board();
+        AI ai = new AI(1);
+        ai.setEvaluator(new SlowEvaluator());
+        ai.setTimeControl(20, 0, 0);
+        long start = System.currentTimeMillis();
+        Move m = ai.findMove(b);
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue(b.isLegal(m));
+        assertTrue("took " + elapsed + " ms", elapsed < 20 + 200);
+    }
+
+    /** Tests that a self-play game with a fixed seed is played to its
+     *  end (a forfeit would cut it short) and reported as one CSV line
+     *  with the expected winner and length. */
+    @Test
+    public void testSelfPlay() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SelfPlay match =
+            new SelfPlay(new SelfPlay.Engine("depth=1,hash=1"),
+                         new SelfPlay.Engine("depth=2,hash=1"), 2, 0,
+                         new PrintStream(bytes, true));
+        match.play(1);
+        String line = bytes.toString().trim();
+        assertTrue(line, line.matches("1,B,A,B,71,\\d+"));
+    }
+
+    /** Return the number of live threads named NAME. */
+    private static int helperThreads(String name) {
+        int n = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name)) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** An evaluator that takes a millisecond per position. */
+    private static class SlowEvaluator implements Evaluator {
+        @Override
+        public int score(Board board) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+            return 0;
+        }
+
+        @Override
+        public Evaluator newInstance() {
+            return this;
+        }
+    }
 }
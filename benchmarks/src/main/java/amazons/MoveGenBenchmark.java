@@ -0,0 +1,87 @@
+package amazons;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Board: move generation, making and undoing moves, and
+ *  detecting the end of the game.
+ *  @author Netra Sathe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenBenchmark {
+
+    /** Which position of the corpus to use. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.ENDGAME })
+    public String phase;
+
+    /** Set up the board for PHASE. */
+    @Setup
+    public void setUp() {
+        _board = Positions.get(phase);
+        _moves = new int[Board.MAX_MOVES];
+        _numMoves = _board.legalMoves(_moves);
+    }
+
+    /** Enumerate all legal moves through the Iterator interface. */
+    @Benchmark
+    public int legalMovesIterator() {
+        int n = 0;
+        Iterator<Move> moves = _board.legalMoves();
+        while (moves.hasNext()) {
+            moves.next();
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Enumerate all legal moves into a move-code buffer. */
+    @Benchmark
+    public int legalMovesBuffer() {
+        return _board.legalMoves(_moves);
+    }
+
+    /** Make and undo every legal move. */
+    @Benchmark
+    public long makeUndo() {
+        long hash = 0;
+        for (int i = 0; i < _numMoves; i += 1) {
+            _board.makeMove(_moves[i]);
+            hash ^= _board.hash();
+            _board.undo();
+        }
+        return hash;
+    }
+
+    /** Determine the winner from scratch (flipping the turn twice
+     *  discards the cached answer). */
+    @Benchmark
+    public Piece winner() {
+        _board.change();
+        _board.change();
+        return _board.winner();
+    }
+
+    /** The board under test. */
+    private Board _board;
+    /** The legal moves in _board. */
+    private int[] _moves;
+    /** The number of legal moves in _board. */
+    private int _numMoves;
+}
@@ -0,0 +1,94 @@
+package amazons;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of random playouts to the end of the game, on a Playout
+ *  board and, for comparison, on a Board.  Also reports plies played
+ *  per second, as the secondary result playout:plies.
+ *  @author Netra Sathe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayoutBenchmark {
+
+    /** Which position of the corpus to start from. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.ENDGAME })
+    public String phase;
+
+    /** Counts plies played, reported per second. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Plies {
+        /** Plies played so far. */
+        public long plies;
+
+        /** Clear the count before each iteration. */
+        @Setup(Level.Iteration)
+        public void clear() {
+            plies = 0;
+        }
+    }
+
+    /** Set up the board for PHASE. */
+    @Setup
+    public void setUp() {
+        _board = Positions.get(phase);
+        _playout = new Playout(1);
+        _moves = new int[Board.MAX_MOVES];
+        _random = new Random(1);
+    }
+
+    /** Play a random game to its end on a Playout board. */
+    @Benchmark
+    public Piece playout(Plies plies) {
+        _playout.load(_board);
+        Piece winner = _playout.play(Integer.MAX_VALUE);
+        plies.plies += _playout.plies();
+        return winner;
+    }
+
+    /** Play a random game to its end on a Board, choosing among all
+     *  legal moves. */
+    @Benchmark
+    public Piece board(Plies plies) {
+        int start = _board.numMoves();
+        int n;
+        while ((n = _board.legalMoves(_moves)) > 0) {
+            _board.makeMove(_moves[_random.nextInt(n)]);
+        }
+        Piece winner = _board.turn().opponent();
+        plies.plies += _board.numMoves() - start;
+        while (_board.numMoves() > start) {
+            _board.undo();
+        }
+        return winner;
+    }
+
+    /** The starting position. */
+    private Board _board;
+    /** The playout board. */
+    private Playout _playout;
+    /** Move buffer for playouts on _board. */
+    private int[] _moves;
+    /** Source of random moves for playouts on _board. */
+    private Random _random;
+}
@@ -0,0 +1,52 @@
+package amazons;
+
+import java.util.Random;
+
+/** The corpus of positions used by the benchmarks.  Each is reached by
+ *  a fixed number of pseudo-random legal moves from the initial
+ *  position, with a fixed seed, so every run measures the same boards.
+ *  @author Netra Sathe
+ */
+final class Positions {
+
+    /** Names of the positions, for use as JMH @Param values. */
+    static final String OPENING = "opening", MIDDLEGAME = "middlegame",
+        ENDGAME = "endgame";
+
+    /** Not instantiable. */
+    private Positions() {
+    }
+
+    /** Return a new Board holding the position named PHASE. */
+    static Board get(String phase) {
+        switch (phase) {
+        case OPENING:
+            return play(OPENING_PLIES);
+        case MIDDLEGAME:
+            return play(MIDDLEGAME_PLIES);
+        case ENDGAME:
+            return play(ENDGAME_PLIES);
+        default:
+            throw new IllegalArgumentException("unknown position: " + phase);
+        }
+    }
+
+    /** Return the board reached by PLIES random moves from the initial
+     *  position. */
+    private static Board play(int plies) {
+        Board board = new Board();
+        Random random = new Random(SEED);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < plies; i += 1) {
+            int n = board.legalMoves(moves);
+            board.makeMove(moves[random.nextInt(n)]);
+        }
+        return board;
+    }
+
+    /** Seed of the random games. */
+    private static final long SEED = 61;
+    /** Length of the random game leading to each position. */
+    private static final int OPENING_PLIES = 2, MIDDLEGAME_PLIES = 24,
+        ENDGAME_PLIES = 48;
+}
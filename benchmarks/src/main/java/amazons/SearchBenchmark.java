@@ -0,0 +1,94 @@
+package amazons;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the AI: static evaluation and fixed-depth search.  The
+ *  search benchmark also reports nodes searched per second, as the
+ *  secondary result findMove:nodes.
+ *  @author Netra Sathe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    /** Which position of the corpus to use. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.ENDGAME })
+    public String phase;
+
+    /** Depth of the fixed-depth search. */
+    @Param({ "2" })
+    public int depth;
+
+    /** Counts nodes visited by searches, reported per second. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        /** Nodes visited so far. */
+        public long nodes;
+
+        /** Clear the count before each iteration. */
+        @Setup(Level.Iteration)
+        public void clear() {
+            nodes = 0;
+        }
+    }
+
+    /** Set up the board for PHASE. */
+    @Setup
+    public void setUp() {
+        _board = Positions.get(phase);
+        _evaluator = new TerritoryEvaluator();
+    }
+
+    /** Create a fresh AI, and so an empty transposition table, for each
+     *  search, so that no search is answered from an earlier one's. */
+    @Setup(Level.Invocation)
+    public void newAI() {
+        _ai = new AI(TABLE_MEGABYTES);
+    }
+
+    /** Evaluate the position statically. */
+    @Benchmark
+    public int staticScore() {
+        return _evaluator.score(_board);
+    }
+
+    /** Search the position to a fixed depth, counting nodes in NODES.
+     *  Measured as throughput, so that nodes are reported per second. */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Move findMove(Nodes nodes) {
+        Move move = _ai.findMove(_board, depth);
+        nodes.nodes += _ai.nodes();
+        return move;
+    }
+
+    /** Transposition table size of the AI under test. */
+    private static final int TABLE_MEGABYTES = 1;
+
+    /** The board under test. */
+    private Board _board;
+    /** The evaluation function under test. */
+    private Evaluator _evaluator;
+    /** The AI under test. */
+    private AI _ai;
+}